@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.swing.JTable;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Measures the whole path of a query, from the execution to the painting of
+ * the grid, against the synthetic driver. It does not need a DB2 server nor a
+ * display.
+ * <p>
+ * The arguments are name=value pairs:
+ * <ul>
+ * <li>url: URL of the synthetic driver, that defines the result.</li>
+ * <li>thresholds: properties file with the maximal values: firstPageMillis,
+ * totalMillis, peakHeapMB and gcPauseMillis.</li>
+ * </ul>
+ * The process ends with status 1 if any measure is over its threshold.
+ * <p>
+ * The pauses and the peak of the heap are taken from the notifications of
+ * the garbage collector: the pauses are the duration of the collections that
+ * stop the application, without the concurrent cycles, and the peak is the
+ * highest use of the whole heap before a collection or at the end.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class LoadHarness implements NotificationListener {
+    /**
+     * Default result: one million rows of mixed types.
+     */
+    private static final String DEFAULT_URL = SyntheticDriver.PREFIX
+            + "rows=1000000;types=INTEGER,CHAR,VARCHAR,DECIMAL,TIMESTAMP,"
+            + "DOUBLE;nulls=0.05;width=24;distinct=50";
+    /**
+     * Size of the painted viewport.
+     */
+    private static final int VIEWPORT_HEIGHT = 800;
+    /**
+     * Width of the painted viewport.
+     */
+    private static final int VIEWPORT_WIDTH = 1200;
+
+    /**
+     * Executes the harness.
+     *
+     * @param args
+     *            Arguments as name=value.
+     * @throws Exception
+     *             If the harness could not be executed.
+     */
+    public static void main(final String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        final Properties arguments = new Properties();
+        for (final String arg : args) {
+            final int pos = arg.indexOf('=');
+            if (pos > 0) {
+                arguments.setProperty(arg.substring(0, pos),
+                        arg.substring(pos + 1));
+            }
+        }
+        final String url = arguments.getProperty("url", DEFAULT_URL);
+        Class.forName(SyntheticDriver.class.getName());
+
+        final Properties thresholds = new Properties();
+        final String thresholdsFile = arguments.getProperty("thresholds");
+        if (thresholdsFile != null) {
+            final InputStream in = new FileInputStream(thresholdsFile);
+            try {
+                thresholds.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        final LoadHarness harness = new LoadHarness();
+        harness.run(url);
+        System.out.println("Result:          " + url);
+        System.out.println("Rows:            " + harness.rows);
+        System.out.println("Row read (ms):   " + harness.firstRowMillis);
+        System.out.println("Fetched (ms):    " + harness.fetchMillis);
+        System.out.println("First page (ms): " + harness.firstPageMillis);
+        System.out.println("Total (ms):      " + harness.totalMillis);
+        System.out.println("Peak heap (MB):  " + harness.peakHeapMB);
+        System.out.println("GC pauses (ms):  " + harness.gcPauseMillis
+                + " in " + harness.gcPauses + " pauses, "
+                + harness.gcCount + " collections");
+
+        boolean failed = false;
+        failed |= check(thresholds, "firstPageMillis",
+                harness.firstPageMillis);
+        failed |= check(thresholds, "totalMillis", harness.totalMillis);
+        failed |= check(thresholds, "peakHeapMB", harness.peakHeapMB);
+        failed |= check(thresholds, "gcPauseMillis", harness.gcPauseMillis);
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares a measure with its threshold.
+     *
+     * @param thresholds
+     *            Maximal values.
+     * @param name
+     *            Name of the measure.
+     * @param value
+     *            Measured value.
+     * @return True if the measure is over its threshold.
+     */
+    private static boolean check(final Properties thresholds,
+            final String name, final long value) {
+        final String max = thresholds.getProperty(name);
+        if (max != null && value > Long.parseLong(max.trim())) {
+            System.out.println("REGRESSION: " + name + " = " + value
+                    + " exceeds " + max.trim());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the quantity of collections done by all the collectors.
+     *
+     * @param collectors
+     *            Garbage collectors.
+     * @return Quantity of collections.
+     */
+    private static long countCollections(
+            final List<GarbageCollectorMXBean> collectors) {
+        long count = 0;
+        for (final GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Time until the whole result was fetched.
+     */
+    long fetchMillis;
+    /**
+     * Time from the execution until the first page of the grid was painted.
+     */
+    long firstPageMillis;
+    /**
+     * Time until the first row was read from the driver.
+     */
+    long firstRowMillis;
+    /**
+     * Quantity of garbage collections, including the concurrent cycles.
+     */
+    long gcCount;
+    /**
+     * Time the application was stopped by the garbage collector.
+     */
+    long gcPauseMillis;
+    /**
+     * Quantity of collection pauses.
+     */
+    long gcPauses;
+    /**
+     * Names of the memory pools of the heap.
+     */
+    private final HashSet<String> heapPools = new HashSet<String>();
+    /**
+     * Maximal use of the heap, in bytes.
+     */
+    private long peakHeap;
+    /**
+     * Maximal use of the heap.
+     */
+    long peakHeapMB;
+    /**
+     * Quantity of rows of the result.
+     */
+    int rows;
+    /**
+     * Time from the execution until the grid was painted.
+     */
+    long totalMillis;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.management.NotificationListener#handleNotification(javax.management
+     * .Notification, java.lang.Object)
+     */
+    @Override
+    public synchronized void handleNotification(
+            final Notification notification, final Object handback) {
+        if (!notification.getType().equals(GarbageCollectionNotificationInfo
+                .GARBAGE_COLLECTION_NOTIFICATION)) {
+            return;
+        }
+        final GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData)
+                        notification.getUserData());
+        this.gcCount++;
+        if (!info.getGcAction().contains("cycle")) {
+            // ZGC and Shenandoah report their concurrent cycles apart.
+            this.gcPauses++;
+            this.gcPauseMillis += info.getGcInfo().getDuration();
+        }
+        long used = 0;
+        for (final Map.Entry<String, MemoryUsage> pool : info.getGcInfo()
+                .getMemoryUsageBeforeGc().entrySet()) {
+            if (this.heapPools.contains(pool.getKey())) {
+                used += pool.getValue().getUsed();
+            }
+        }
+        this.peakHeap = Math.max(this.peakHeap, used);
+        this.notifyAll();
+    }
+
+    /**
+     * Executes the query, creates the model and the table, and paints the
+     * first and the middle page of the grid.
+     *
+     * @param url
+     *            URL of the synthetic result.
+     * @throws SQLException
+     *             If there is a problem executing the query.
+     * @throws InterruptedException
+     *             If the harness is interrupted while it waits for the
+     *             notifications of the garbage collector.
+     */
+    void run(final String url) throws SQLException, InterruptedException {
+        final List<MemoryPoolMXBean> pools = ManagementFactory
+                .getMemoryPoolMXBeans();
+        for (final MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                this.heapPools.add(pool.getName());
+            }
+        }
+        final List<GarbageCollectorMXBean> collectors = ManagementFactory
+                .getGarbageCollectorMXBeans();
+        for (final GarbageCollectorMXBean collector : collectors) {
+            ((NotificationEmitter) collector).addNotificationListener(this,
+                    null, null);
+        }
+        final long collectionsInitial = countCollections(collectors);
+        System.gc();
+        this.waitNotifications(countCollections(collectors)
+                - collectionsInitial);
+        synchronized (this) {
+            this.gcCount = 0;
+            this.gcPauses = 0;
+            this.gcPauseMillis = 0;
+            this.peakHeap = 0;
+        }
+        final long collectionsBefore = countCollections(collectors);
+
+        final long start = System.nanoTime();
+        final DB2Broker broker = new DB2Broker(null);
+        final Connection conn = DriverManager.getConnection(url);
+        final ResultBuffer data;
+        try {
+            data = broker.fetch(conn, "SELECT * FROM SYNTHETIC");
+        } finally {
+            conn.close();
+        }
+        final long fetched = System.nanoTime();
+
+        final JTable table = new JTable(new ResultTableModel(data));
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.setSize(Math.max(VIEWPORT_WIDTH, table.getPreferredSize().width),
+                table.getPreferredSize().height);
+        table.doLayout();
+        final BufferedImage image = new BufferedImage(VIEWPORT_WIDTH,
+                VIEWPORT_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        final long firstPage;
+        try {
+            // First page.
+            g.setClip(0, 0, VIEWPORT_WIDTH, VIEWPORT_HEIGHT);
+            table.paint(g);
+            firstPage = System.nanoTime();
+            // Page in the middle of the result.
+            final int middle = table.getRowHeight() * (data.getRowCount() / 2);
+            g.translate(0, -middle);
+            g.setClip(0, middle, VIEWPORT_WIDTH, VIEWPORT_HEIGHT);
+            table.paint(g);
+        } finally {
+            g.dispose();
+        }
+        final long end = System.nanoTime();
+
+        long used = 0;
+        for (final MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        this.waitNotifications(countCollections(collectors)
+                - collectionsBefore);
+        for (final GarbageCollectorMXBean collector : collectors) {
+            try {
+                ((NotificationEmitter) collector)
+                        .removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // Already removed.
+            }
+        }
+
+        this.rows = data.getRowCount();
+        this.firstRowMillis = this.rows == 0 ? 0
+                : (SyntheticDriver.firstRowNanos - start) / 1000000;
+        this.fetchMillis = (fetched - start) / 1000000;
+        this.firstPageMillis = (firstPage - start) / 1000000;
+        this.totalMillis = (end - start) / 1000000;
+        synchronized (this) {
+            this.peakHeapMB = Math.max(this.peakHeap, used) / (1024 * 1024);
+        }
+    }
+
+    /**
+     * Waits until the notifications of the given quantity of collections
+     * arrive. The notifications are sent by another thread after each
+     * collection; the wait ends after one second in any case.
+     *
+     * @param collections
+     *            Quantity of collections expected.
+     * @throws InterruptedException
+     *             If the thread is interrupted.
+     */
+    private synchronized void waitNotifications(final long collections)
+            throws InterruptedException {
+        final long limit = System.currentTimeMillis() + 1000;
+        long remaining = 1000;
+        while (this.gcCount < collections && remaining > 0) {
+            this.wait(remaining);
+            remaining = limit - System.currentTimeMillis();
+        }
+    }
+}
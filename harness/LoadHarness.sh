@@ -0,0 +1,37 @@
+#!/bin/sh
+
+# Copyright (c) 2012 Andres Gomez Casanova
+#
+# Permission is hereby granted, free of charge, to any person obtaining a copy
+# of this software and associated documentation files (the "Software"), to deal
+# in the Software without restriction, including without limitation the rights
+# to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+# copies of the Software, and to permit persons to whom the Software is
+# furnished to do so, subject to the following conditions:
+# 
+# The above copyright notice and this permission notice shall be included in
+# all copies or substantial portions of the Software.
+# 
+# THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+# IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+# FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+# AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+# LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+# OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+# SOFTWARE.
+
+# Compiles the viewer with the synthetic driver and measures the path from the
+# query execution to the painted grid, without a DB2 server nor a display.
+# The arguments are passed to the harness, for example:
+#   LoadHarness.sh "url=jdbc:synthetic:rows=200000;types=CHAR,VARCHAR;latency=1"
+# Ends with status 1 if a measure exceeds thresholds.properties.
+
+cd "$(dirname "$0")"
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+CP=../src/db2jcc.jar:../src/miglayout15-swing.jar
+javac -nowarn -d "$OUT" -cp $CP ../src/*.java *.java || exit 2
+# The diagnostics log is kept out of the home of the user.
+java -Xmx1g -Djava.awt.headless=true -Ddb2viewer.logdir="$OUT/log" \
+  -cp "$OUT:$CP" LoadHarness \
+  thresholds=thresholds.properties "$@"
@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver that returns synthetic results, in order to exercise the viewer
+ * without a DB2 server.
+ * <p>
+ * The shape of the result is defined in the URL, for example:
+ * <code>jdbc:synthetic:rows=1000000;types=INTEGER,CHAR,VARCHAR;nulls=0.05;
+ * width=20;distinct=50;latency=2;fetch=64</code>
+ * <ul>
+ * <li>rows: quantity of rows.</li>
+ * <li>types: types of the columns, as named in java.sql.Types.</li>
+ * <li>nulls: ratio of null values, between 0 and 1.</li>
+ * <li>width: length of the VARCHAR, LONGVARCHAR and CLOB values.</li>
+ * <li>distinct: quantity of distinct CHAR values.</li>
+ * <li>latency: milliseconds waited for each block of rows.</li>
+ * <li>fetch: quantity of rows of each block.</li>
+ * </ul>
+ * The executed query is ignored. The values are calculated from the position
+ * of the cell, thus the driver does not keep the rows in memory.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class SyntheticDriver implements Driver {
+
+    /**
+     * Shape of a synthetic result.
+     */
+    static final class Shape {
+        /**
+         * Quantity of distinct CHAR values.
+         */
+        int distinct = 50;
+        /**
+         * Quantity of rows of each block.
+         */
+        int fetch = 64;
+        /**
+         * Milliseconds waited for each block of rows.
+         */
+        long latency;
+        /**
+         * Ratio of null values.
+         */
+        double nulls;
+        /**
+         * Quantity of rows.
+         */
+        long rows = 1000;
+        /**
+         * Types of the columns.
+         */
+        int[] types = { Types.INTEGER, Types.VARCHAR };
+        /**
+         * Names of the types of the columns.
+         */
+        String[] typeNames = { "INTEGER", "VARCHAR" };
+        /**
+         * Length of the long character values.
+         */
+        int width = 20;
+    }
+
+    /**
+     * Handles the calls to the connection and statement proxies.
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+        /**
+         * Shape of the results.
+         */
+        private final Shape shape;
+        /**
+         * Indicates that the connection was closed.
+         */
+        private boolean closed;
+
+        /**
+         * Creates the handler.
+         *
+         * @param shape
+         *            Shape of the results.
+         */
+        ConnectionHandler(final Shape shape) {
+            this.shape = shape;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            final String name = method.getName();
+            if (name.equals("createStatement")) {
+                return Proxy.newProxyInstance(
+                        SyntheticDriver.class.getClassLoader(),
+                        new Class<?>[] { Statement.class }, this);
+            } else if (name.equals("executeQuery")) {
+                return Proxy.newProxyInstance(
+                        SyntheticDriver.class.getClassLoader(),
+                        new Class<?>[] { ResultSet.class },
+                        new ResultHandler(this.shape));
+            } else if (name.equals("close")) {
+                if (method.getDeclaringClass() == Connection.class) {
+                    this.closed = true;
+                }
+                return null;
+            } else if (name.equals("isClosed")) {
+                return Boolean.valueOf(this.closed);
+            } else if (name.equals("setFetchSize")
+                    || name.equals("setAutoCommit")
+                    || name.equals("commit")) {
+                return null;
+            }
+            return objectMethod(proxy, method, args);
+        }
+    }
+
+    /**
+     * Handles the calls to the result set and metadata proxies.
+     */
+    private static final class ResultHandler implements InvocationHandler {
+        /**
+         * Current row, starting at 1.
+         */
+        private long row;
+        /**
+         * Shape of the result.
+         */
+        private final Shape shape;
+        /**
+         * Indicates that the last read value was null.
+         */
+        private boolean wasNull;
+
+        /**
+         * Creates the handler.
+         *
+         * @param shape
+         *            Shape of the result.
+         */
+        ResultHandler(final Shape shape) {
+            this.shape = shape;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            final String name = method.getName();
+            if (name.equals("next")) {
+                return Boolean.valueOf(this.next());
+            } else if (name.equals("wasNull")) {
+                return Boolean.valueOf(this.wasNull);
+            } else if (name.equals("getMetaData")) {
+                return Proxy.newProxyInstance(
+                        SyntheticDriver.class.getClassLoader(),
+                        new Class<?>[] { ResultSetMetaData.class }, this);
+            } else if (name.equals("getColumnCount")) {
+                return Integer.valueOf(this.shape.types.length);
+            } else if (name.equals("getColumnType")) {
+                return Integer.valueOf(this.shape.types[column(args)]);
+            } else if (name.equals("getColumnName")
+                    || name.equals("getColumnLabel")) {
+                return "C" + (column(args) + 1) + "_"
+                        + this.shape.typeNames[column(args)];
+            } else if (name.equals("getTableName")
+                    || name.equals("getSchemaName")) {
+                return "";
+            } else if (name.equals("close")) {
+                return null;
+            } else if (name.startsWith("get") && args != null
+                    && args.length == 1 && args[0] instanceof Integer) {
+                return this.value(name, column(args));
+            }
+            return objectMethod(proxy, method, args);
+        }
+
+        /**
+         * Moves to the next row, waiting at the beginning of each block.
+         *
+         * @return False if there are no more rows.
+         * @throws InterruptedException
+         *             If the thread is interrupted while waiting.
+         */
+        private boolean next() throws InterruptedException {
+            if (this.row >= this.shape.rows) {
+                return false;
+            }
+            if (this.shape.latency > 0 && this.row % this.shape.fetch == 0) {
+                Thread.sleep(this.shape.latency);
+            }
+            this.row++;
+            if (this.row == 1) {
+                firstRowNanos = System.nanoTime();
+            }
+            return true;
+        }
+
+        /**
+         * Calculates the value of a cell of the current row.
+         *
+         * @param getter
+         *            Name of the called getter.
+         * @param column
+         *            Position of the column, starting at 0.
+         * @return The value, of the type returned by the getter.
+         */
+        private Object value(final String getter, final int column) {
+            long hash = this.row * 0x9E3779B97F4A7C15L + column;
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            final long positive = hash >>> 1;
+            this.wasNull = (positive % 10000) < this.shape.nulls * 10000;
+
+            final int type = this.shape.types[column];
+            if (getter.equals("getInt") || getter.equals("getShort")) {
+                return Integer.valueOf(this.wasNull ? 0
+                        : (int) (positive % 1000000));
+            } else if (getter.equals("getLong")) {
+                return Long.valueOf(this.wasNull ? 0 : positive % 1000000000L);
+            } else if (getter.equals("getDouble")) {
+                return Double.valueOf(this.wasNull ? 0
+                        : (positive % 100000000) / 100.0);
+            } else if (getter.equals("getFloat")) {
+                return Float.valueOf(this.wasNull ? 0
+                        : (positive % 1000000) / 100.0f);
+            } else if (getter.equals("getBoolean")) {
+                return Boolean.valueOf(!this.wasNull && (positive & 1) == 1);
+            } else if (this.wasNull) {
+                return null;
+            } else if (getter.equals("getBigDecimal")) {
+                return BigDecimal.valueOf(positive % 1000000000000L);
+            } else if (getter.equals("getDate")) {
+                return new java.sql.Date(BASE_TIME + (positive % 3650)
+                        * 86400000L);
+            } else if (getter.equals("getTime")) {
+                return new java.sql.Time(positive % 86400000L);
+            } else if (getter.equals("getTimestamp")) {
+                return new java.sql.Timestamp(BASE_TIME + positive
+                        % 315360000000L);
+            } else if (type == Types.CHAR) {
+                return "CODE" + (positive % this.shape.distinct);
+            } else if (type == Types.VARCHAR || type == Types.LONGVARCHAR
+                    || type == Types.CLOB) {
+                final char[] chars = new char[this.shape.width];
+                long rest = positive;
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = (char) ('a' + rest % 26);
+                    rest = rest / 26 == 0 ? positive + i : rest / 26;
+                }
+                return new String(chars);
+            }
+            return String.valueOf(positive % 1000000);
+        }
+    }
+
+    /**
+     * Base of the generated dates: 2012-01-01.
+     */
+    private static final long BASE_TIME = 1325376000000L;
+    /**
+     * Prefix of the URLs accepted by this driver.
+     */
+    static final String PREFIX = "jdbc:synthetic:";
+
+    /**
+     * Time when the first row of the last result was read, from
+     * System.nanoTime().
+     */
+    static volatile long firstRowNanos;
+
+    static {
+        try {
+            java.sql.DriverManager.registerDriver(new SyntheticDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Retrieves the position of the column given as the only argument.
+     *
+     * @param args
+     *            Arguments of the call, with the JDBC column index.
+     * @return Position of the column, starting at 0.
+     */
+    static int column(final Object[] args) {
+        return ((Integer) args[0]).intValue() - 1;
+    }
+
+    /**
+     * Handles the methods of java.lang.Object, and rejects the rest.
+     *
+     * @param proxy
+     *            Proxy that received the call.
+     * @param method
+     *            Called method.
+     * @param args
+     *            Arguments of the call.
+     * @return The result of the Object method.
+     * @throws SQLFeatureNotSupportedException
+     *             If the method is not supported by this driver.
+     */
+    static Object objectMethod(final Object proxy, final Method method,
+            final Object[] args) throws SQLFeatureNotSupportedException {
+        final String name = method.getName();
+        if (name.equals("hashCode")) {
+            return Integer.valueOf(System.identityHashCode(proxy));
+        } else if (name.equals("equals")) {
+            return Boolean.valueOf(proxy == args[0]);
+        } else if (name.equals("toString")) {
+            return "Synthetic " + method.getDeclaringClass().getSimpleName();
+        }
+        throw new SQLFeatureNotSupportedException(name);
+    }
+
+    /**
+     * Reads the shape of the result from an URL.
+     *
+     * @param url
+     *            URL of the driver.
+     * @return The shape described in the URL.
+     * @throws SQLException
+     *             If a type or a number is not valid.
+     */
+    static Shape parse(final String url) throws SQLException {
+        final Shape shape = new Shape();
+        for (final String pair : url.substring(PREFIX.length()).split(";")) {
+            final int pos = pair.indexOf('=');
+            if (pos <= 0) {
+                continue;
+            }
+            final String key = pair.substring(0, pos).trim();
+            final String value = pair.substring(pos + 1).trim();
+            try {
+                if (key.equals("rows")) {
+                    shape.rows = Long.parseLong(value);
+                } else if (key.equals("nulls")) {
+                    shape.nulls = Double.parseDouble(value);
+                } else if (key.equals("width")) {
+                    shape.width = Integer.parseInt(value);
+                } else if (key.equals("distinct")) {
+                    shape.distinct = Integer.parseInt(value);
+                } else if (key.equals("latency")) {
+                    shape.latency = Long.parseLong(value);
+                } else if (key.equals("fetch")) {
+                    shape.fetch = Integer.parseInt(value);
+                } else if (key.equals("types")) {
+                    shape.typeNames = value.split(",");
+                    shape.types = new int[shape.typeNames.length];
+                    for (int i = 0; i < shape.types.length; i++) {
+                        shape.typeNames[i] = shape.typeNames[i].trim();
+                        shape.types[i] = Types.class.getField(
+                                shape.typeNames[i]).getInt(null);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new SQLException("Invalid value for " + key + ": "
+                        + value, e);
+            } catch (NoSuchFieldException e) {
+                throw new SQLException("Unknown type: " + value, e);
+            } catch (IllegalAccessException e) {
+                throw new SQLException("Unknown type: " + value, e);
+            }
+        }
+        return shape;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.sql.Driver#acceptsURL(java.lang.String)
+     */
+    @Override
+    public boolean acceptsURL(final String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.sql.Driver#connect(java.lang.String, java.util.Properties)
+     */
+    @Override
+    public Connection connect(final String url, final Properties info)
+            throws SQLException {
+        if (!this.acceptsURL(url)) {
+            return null;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                SyntheticDriver.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(
+                        parse(url)));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.sql.Driver#getMajorVersion()
+     */
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.sql.Driver#getMinorVersion()
+     */
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.sql.Driver#getParentLogger()
+     */
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.sql.Driver#getPropertyInfo(java.lang.String,
+     * java.util.Properties)
+     */
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url,
+            final Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.sql.Driver#jdbcCompliant()
+     */
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Set of connections to the same database that are reused by the tasks that
+ * run in background (monitoring queries, imports).
+ * <p>
+ * The connections are opened on demand, and at most {@link #getSize()}
+ * connections are in use at the same time.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class ConnectionPool {
+    /**
+     * Indicates that the pool was closed.
+     */
+    private boolean closed;
+    /**
+     * Connections that are not in use.
+     */
+    private final ArrayList<Connection> idle = new ArrayList<Connection>();
+    /**
+     * Password.
+     */
+    private final String password;
+    /**
+     * Permits to use a connection.
+     */
+    private final Semaphore permits;
+    /**
+     * Maximal quantity of connections.
+     */
+    private final int size;
+    /**
+     * URL of the database.
+     */
+    private final String url;
+    /**
+     * User name.
+     */
+    private final String user;
+
+    /**
+     * Creates a pool without connections.
+     *
+     * @param url
+     *            URL of the database.
+     * @param user
+     *            User name.
+     * @param password
+     *            Password.
+     * @param size
+     *            Maximal quantity of connections.
+     */
+    ConnectionPool(final String url, final String user, final String password,
+            final int size) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.size = size;
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Takes a connection from the pool, opening a new one if there is not an
+     * idle connection. Waits if all the connections are in use.
+     *
+     * @return A connection that has to be given back with
+     *         {@link #release(Connection)}.
+     * @throws SQLException
+     *             If the connection could not be established.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    Connection acquire() throws SQLException, InterruptedException {
+        this.permits.acquire();
+        Connection conn = null;
+        synchronized (this.idle) {
+            if (!this.idle.isEmpty()) {
+                conn = this.idle.remove(this.idle.size() - 1);
+            }
+        }
+        try {
+            if (conn == null || conn.isClosed()) {
+                conn = DriverManager.getConnection(this.url, this.user,
+                        this.password);
+            }
+        } catch (SQLException e) {
+            this.permits.release();
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Closes all the idle connections. The connections in use are closed when
+     * they are released.
+     */
+    void close() {
+        synchronized (this.idle) {
+            this.closed = true;
+            for (final Connection conn : this.idle) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    // The connection is discarded anyway.
+                }
+            }
+            this.idle.clear();
+        }
+    }
+
+    /**
+     * Retrieves the maximal quantity of connections.
+     *
+     * @return Maximal quantity of connections.
+     */
+    int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Gives back a connection to the pool.
+     *
+     * @param conn
+     *            Connection taken with {@link #acquire()}.
+     */
+    void release(final Connection conn) {
+        synchronized (this.idle) {
+            if (this.closed) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    // The connection is discarded anyway.
+                }
+            } else {
+                this.idle.add(conn);
+            }
+        }
+        this.permits.release();
+    }
+}
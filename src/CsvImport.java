@@ -0,0 +1,705 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the records of a CSV file into a table.
+ * <p>
+ * The file is read by the calling thread, and the records are given in
+ * batches to several workers; each one inserts them with a prepared statement
+ * and <code>executeBatch</code>, in its own connection of the pool, and
+ * commits every few rows. When a batch fails, it is rolled back and its rows
+ * are inserted one by one, to find the bad ones.
+ * <p>
+ * The rejected rows are written in the reject file, as CSV, with two more
+ * fields: the line in the original file and the reason.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class CsvImport {
+
+    /**
+     * Rows given to a worker at once.
+     */
+    private static final class Batch {
+        /**
+         * Line of each row in the file.
+         */
+        final long[] lines;
+        /**
+         * Fields of each row.
+         */
+        final String[][] rows;
+        /**
+         * Quantity of rows.
+         */
+        int size;
+
+        /**
+         * Creates an empty batch.
+         *
+         * @param capacity
+         *            Maximal quantity of rows.
+         */
+        Batch(final int capacity) {
+            this.lines = new long[capacity];
+            this.rows = new String[capacity][];
+        }
+    }
+
+    /**
+     * Batch that indicates to a worker that there are not more rows.
+     */
+    private static final Batch END = new Batch(0);
+
+    /**
+     * Converts a time, in JDBC format (10:20:30) or in the format of the DB2
+     * delimited files (10.20.30).
+     *
+     * @param value
+     *            Time.
+     * @return The time.
+     * @throws IllegalArgumentException
+     *             If the value is not a time.
+     */
+    private static Time parseTime(final String value) {
+        return Time.valueOf(value.replace('.', ':'));
+    }
+
+    /**
+     * Converts a timestamp, in JDBC format (2012-08-27 10:20:30.000000) or in
+     * the format of the DB2 delimited files (2012-08-27-10.20.30.000000).
+     *
+     * @param value
+     *            Timestamp.
+     * @return The timestamp.
+     * @throws IllegalArgumentException
+     *             If the value is not a timestamp.
+     */
+    private static Timestamp parseTimestamp(final String value) {
+        if (value.length() >= 19 && value.charAt(10) == '-'
+                && value.charAt(13) == '.' && value.charAt(16) == '.') {
+            final char[] chars = value.toCharArray();
+            chars[10] = ' ';
+            chars[13] = ':';
+            chars[16] = ':';
+            return Timestamp.valueOf(new String(chars));
+        }
+        return Timestamp.valueOf(value);
+    }
+
+    /**
+     * Writes a CSV field, quoted if necessary.
+     *
+     * @param out
+     *            Destination.
+     * @param value
+     *            Field.
+     * @param separator
+     *            Separator of the fields.
+     * @throws IOException
+     *             If the field could not be written.
+     */
+    private static void writeField(final Writer out, final String value,
+            final char separator) throws IOException {
+        if (value.indexOf(separator) < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+        } else {
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    /**
+     * Rows in each batch.
+     */
+    private int batchSize = 500;
+    /**
+     * Indicates that the import has to stop.
+     */
+    private volatile boolean cancelled;
+    /**
+     * Encoding of the file.
+     */
+    private Charset charset = Charset.defaultCharset();
+    /**
+     * Names of the columns of the table that are loaded.
+     */
+    private final String[] columns;
+    /**
+     * Rows inserted by each worker between commits.
+     */
+    private int commitInterval = 10000;
+    /**
+     * File to load.
+     */
+    private final File file;
+    /**
+     * Position of the field of the file for each column.
+     */
+    private final int[] fields;
+    /**
+     * Indicates that the first record has the names of the columns.
+     */
+    private boolean header = true;
+    /**
+     * Rows executed in the database.
+     */
+    private final AtomicLong inserted = new AtomicLong();
+    /**
+     * Connections used by the workers.
+     */
+    private final ConnectionPool pool;
+    /**
+     * Records read from the file.
+     */
+    private final AtomicLong read = new AtomicLong();
+    /**
+     * Rows that could not be loaded.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+    /**
+     * File for the rejected rows; null to only count them.
+     */
+    private File rejectFile;
+    /**
+     * Writer of the rejected rows.
+     */
+    private Writer rejects;
+    /**
+     * Separator of the fields.
+     */
+    private char separator = ',';
+    /**
+     * Table to load.
+     */
+    private final String table;
+    /**
+     * JDBC type of each column.
+     */
+    private final int[] types;
+
+    /**
+     * Creates an import.
+     *
+     * @param connections
+     *            Pool of connections to the database; one worker is started
+     *            per connection, except one.
+     * @param csv
+     *            File to load.
+     * @param tableName
+     *            Qualified name of the table, as written in SQL.
+     * @param columnNames
+     *            Names of the columns that are loaded, as in the catalog.
+     * @param columnTypes
+     *            JDBC type of each column.
+     * @param fieldPositions
+     *            Position of the field of the file for each column.
+     */
+    public CsvImport(final ConnectionPool connections, final File csv,
+            final String tableName, final String[] columnNames,
+            final int[] columnTypes, final int[] fieldPositions) {
+        this.pool = connections;
+        this.file = csv;
+        this.table = tableName;
+        this.columns = columnNames;
+        this.types = columnTypes;
+        this.fields = fieldPositions;
+    }
+
+    /**
+     * Assigns the values of a row to the parameters of the statement.
+     *
+     * @param stmt
+     *            Insert statement.
+     * @param row
+     *            Fields of the record.
+     * @param line
+     *            Line of the record in the file.
+     * @return False if the row was rejected.
+     * @throws SQLException
+     *             If there is a problem with the statement.
+     * @throws IOException
+     *             If the rejected row could not be written.
+     */
+    private boolean bind(final PreparedStatement stmt, final String[] row,
+            final long line) throws SQLException, IOException {
+        for (int i = 0; i < this.columns.length; i++) {
+            if (this.fields[i] >= row.length) {
+                this.reject(row, line, "Missing field for " + this.columns[i]);
+                return false;
+            }
+            final String value = row[this.fields[i]];
+            final int type = this.types[i];
+            try {
+                if (value.length() == 0 && type != Types.CHAR
+                        && type != Types.VARCHAR
+                        && type != Types.LONGVARCHAR) {
+                    stmt.setNull(i + 1, type);
+                    continue;
+                }
+                switch (type) {
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                    stmt.setInt(i + 1, Integer.parseInt(value.trim()));
+                    break;
+                case Types.BIGINT:
+                    stmt.setLong(i + 1, Long.parseLong(value.trim()));
+                    break;
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    stmt.setBigDecimal(i + 1, new BigDecimal(value.trim()));
+                    break;
+                case Types.REAL:
+                    stmt.setFloat(i + 1, Float.parseFloat(value.trim()));
+                    break;
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    stmt.setDouble(i + 1, Double.parseDouble(value.trim()));
+                    break;
+                case Types.DATE:
+                    stmt.setDate(i + 1, Date.valueOf(value.trim()));
+                    break;
+                case Types.TIME:
+                    stmt.setTime(i + 1, parseTime(value.trim()));
+                    break;
+                case Types.TIMESTAMP:
+                    stmt.setTimestamp(i + 1, parseTimestamp(value.trim()));
+                    break;
+                default:
+                    stmt.setString(i + 1, value);
+                }
+            } catch (IllegalArgumentException e) {
+                // Also NumberFormatException.
+                this.reject(row, line, "Invalid value for " + this.columns[i]
+                        + ": " + value);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the import. The rows already inserted are committed.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Inserts the rows of a batch. If the batch fails, it is rolled back to
+     * a savepoint and the rows are inserted one by one. The savepoint is only
+     * set if the batch has valid rows, and it is always released.
+     *
+     * @param conn
+     *            Connection of the worker.
+     * @param stmt
+     *            Insert statement.
+     * @param batch
+     *            Rows to insert.
+     * @return Quantity of inserted rows.
+     * @throws SQLException
+     *             If there is a problem with the connection.
+     * @throws IOException
+     *             If a rejected row could not be written.
+     */
+    private int execute(final Connection conn, final PreparedStatement stmt,
+            final Batch batch) throws SQLException, IOException {
+        final boolean[] valid = new boolean[batch.size];
+        int ret = 0;
+        for (int i = 0; i < batch.size; i++) {
+            valid[i] = this.bind(stmt, batch.rows[i], batch.lines[i]);
+            if (valid[i]) {
+                stmt.addBatch();
+                ret++;
+            }
+        }
+        if (ret == 0) {
+            return 0;
+        }
+        final Savepoint savepoint = conn.setSavepoint();
+        try {
+            stmt.executeBatch();
+            conn.releaseSavepoint(savepoint);
+            return ret;
+        } catch (BatchUpdateException e) {
+            conn.rollback(savepoint);
+            conn.releaseSavepoint(savepoint);
+            stmt.clearBatch();
+        }
+        ret = 0;
+        for (int i = 0; i < batch.size; i++) {
+            // The invalid values were already rejected.
+            if (valid[i] && this.bind(stmt, batch.rows[i], batch.lines[i])) {
+                try {
+                    stmt.executeUpdate();
+                    ret++;
+                } catch (SQLException e) {
+                    this.reject(batch.rows[i], batch.lines[i], e.getMessage());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the quantity of rows inserted.
+     *
+     * @return Rows executed in the database.
+     */
+    public long getInserted() {
+        return this.inserted.get();
+    }
+
+    /**
+     * Retrieves the quantity of records read.
+     *
+     * @return Records read from the file.
+     */
+    public long getRead() {
+        return this.read.get();
+    }
+
+    /**
+     * Retrieves the quantity of rejected rows.
+     *
+     * @return Rows that could not be loaded.
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * Inserts the batches of the queue, until the end mark. Called from the
+     * worker threads.
+     *
+     * @param queue
+     *            Batches read from the file.
+     * @throws SQLException
+     *             If there is a problem with the database.
+     * @throws InterruptedException
+     *             If the thread was interrupted.
+     * @throws IOException
+     *             If a rejected row could not be written.
+     */
+    private void insert(final BlockingQueue<Batch> queue)
+            throws SQLException, InterruptedException, IOException {
+        final StringBuilder sql = new StringBuilder("INSERT INTO ");
+        sql.append(this.table).append(" (");
+        for (int i = 0; i < this.columns.length; i++) {
+            sql.append(i == 0 ? "\"" : ", \"")
+                    .append(this.columns[i].replace("\"", "\"\""))
+                    .append('"');
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < this.columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+
+        final Connection conn = this.pool.acquire();
+        try {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            final PreparedStatement stmt = conn.prepareStatement(sql
+                    .toString());
+            int uncommitted = 0;
+            SQLException failure = null;
+            try {
+                Batch batch = queue.take();
+                while (batch != END && !this.cancelled) {
+                    final int rows = this.execute(conn, stmt, batch);
+                    this.inserted.addAndGet(rows);
+                    uncommitted += rows;
+                    if (uncommitted >= this.commitInterval) {
+                        conn.commit();
+                        uncommitted = 0;
+                    }
+                    batch = queue.take();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                // The rows since the last commit are undone.
+                failure = e;
+                this.inserted.addAndGet(-uncommitted);
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    e.setNextException(ex);
+                }
+                throw e;
+            } finally {
+                try {
+                    stmt.close();
+                    conn.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    // The original problem is kept.
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.setNextException(e);
+                }
+            }
+        } finally {
+            this.pool.release(conn);
+        }
+    }
+
+    /**
+     * Checks if the import was cancelled.
+     *
+     * @return True if the import stopped before the end of the file.
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Gives a batch to the workers, waiting while they are busy. Does not
+     * wait if the import was cancelled, because the workers could have
+     * stopped.
+     *
+     * @param queue
+     *            Batches for the workers.
+     * @param batch
+     *            Batch to give.
+     * @throws InterruptedException
+     *             If the thread was interrupted.
+     */
+    private void offer(final BlockingQueue<Batch> queue, final Batch batch)
+            throws InterruptedException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (this.cancelled) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a rejected row.
+     *
+     * @param row
+     *            Fields of the record.
+     * @param line
+     *            Line of the record in the file.
+     * @param reason
+     *            Why the row was rejected.
+     * @throws IOException
+     *             If the row could not be written.
+     */
+    private void reject(final String[] row, final long line,
+            final String reason) throws IOException {
+        this.rejected.incrementAndGet();
+        if (this.rejects == null) {
+            return;
+        }
+        synchronized (this.rejects) {
+            for (final String value : row) {
+                writeField(this.rejects, value, this.separator);
+                this.rejects.write(this.separator);
+            }
+            this.rejects.write(Long.toString(line));
+            this.rejects.write(this.separator);
+            writeField(this.rejects, String.valueOf(reason), this.separator);
+            this.rejects.write('\n');
+        }
+    }
+
+    /**
+     * Loads the file. The file is read in the calling thread, while the
+     * workers insert the rows.
+     *
+     * @throws IOException
+     *             If there is a problem reading the file.
+     * @throws SQLException
+     *             If there is a problem inserting the rows, other than a bad
+     *             row.
+     * @throws InterruptedException
+     *             If the thread was interrupted.
+     */
+    public void run() throws IOException, SQLException, InterruptedException {
+        // One connection is left for the refreshes and the dashboard.
+        final int workerQty = Math.max(1, this.pool.getSize() - 1);
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(
+                workerQty * 2);
+        final ExecutorService workers = Executors.newFixedThreadPool(
+                workerQty, new DaemonThreadFactory("Import"));
+        if (this.rejectFile != null) {
+            this.rejects = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(this.rejectFile), this.charset));
+        }
+        final CsvReader reader = new CsvReader(this.file, this.charset,
+                this.separator);
+        try {
+            final ArrayList<Future<Void>> results =
+                    new ArrayList<Future<Void>>();
+            for (int i = 0; i < workerQty; i++) {
+                results.add(workers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            CsvImport.this.insert(queue);
+                        } catch (Exception e) {
+                            // The other workers and the reader stop.
+                            CsvImport.this.cancelled = true;
+                            throw e;
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            if (this.header) {
+                reader.next();
+            }
+            Batch batch = new Batch(this.batchSize);
+            while (!this.cancelled && reader.next()) {
+                batch.lines[batch.size] = reader.getLine();
+                batch.rows[batch.size] = Arrays.copyOf(reader.getFields(),
+                        reader.getFieldCount());
+                batch.size++;
+                this.read.incrementAndGet();
+                if (batch.size == this.batchSize) {
+                    this.offer(queue, batch);
+                    batch = new Batch(this.batchSize);
+                }
+            }
+            if (batch.size > 0) {
+                this.offer(queue, batch);
+            }
+            for (int i = 0; i < workerQty; i++) {
+                this.offer(queue, END);
+            }
+
+            for (final Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof SQLException) {
+                        throw (SQLException) cause;
+                    } else if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            reader.close();
+            if (this.rejects != null) {
+                this.rejects.close();
+            }
+        }
+    }
+
+    /**
+     * Defines the rows in each batch.
+     *
+     * @param rows
+     *            Rows sent to the database at once.
+     */
+    public void setBatchSize(final int rows) {
+        this.batchSize = rows;
+    }
+
+    /**
+     * Defines the encoding of the file.
+     *
+     * @param encoding
+     *            Charset of the file.
+     */
+    public void setCharset(final Charset encoding) {
+        this.charset = encoding;
+    }
+
+    /**
+     * Defines how often the workers commit.
+     *
+     * @param rows
+     *            Rows inserted by each worker between commits.
+     */
+    public void setCommitInterval(final int rows) {
+        this.commitInterval = rows;
+    }
+
+    /**
+     * Defines if the first record has the names of the columns.
+     *
+     * @param names
+     *            True to skip the first record.
+     */
+    public void setHeader(final boolean names) {
+        this.header = names;
+    }
+
+    /**
+     * Defines the file for the rejected rows.
+     *
+     * @param reject
+     *            File to write; null to only count the rejected rows.
+     */
+    public void setRejectFile(final File reject) {
+        this.rejectFile = reject;
+    }
+
+    /**
+     * Defines the separator of the fields.
+     *
+     * @param fieldSeparator
+     *            Separator.
+     */
+    public void setSeparator(final char fieldSeparator) {
+        this.separator = fieldSeparator;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads the records of a CSV file, one at a time, without loading the file.
+ * <p>
+ * The file is read through a channel into fixed buffers, that are reused for
+ * all the records. The fields can be quoted with double quotes; a quote
+ * inside a quoted field is written twice, and a quoted field can contain
+ * separators and line breaks. Empty lines are skipped, but a line with only
+ * <code>""</code> is a record with one empty field. A leading byte order mark
+ * is ignored.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class CsvReader implements Closeable {
+    /**
+     * Size of the buffers.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Bytes read from the file.
+     */
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /**
+     * File being read.
+     */
+    private final FileChannel channel;
+    /**
+     * Decoded characters, ready to be read.
+     */
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    /**
+     * Quantity of fields of the current record.
+     */
+    private int count;
+    /**
+     * Decoder of the characters.
+     */
+    private final CharsetDecoder decoder;
+    /**
+     * Indicates that all the bytes of the file were read.
+     */
+    private boolean eof;
+    /**
+     * Field being read.
+     */
+    private final StringBuilder field = new StringBuilder();
+    /**
+     * Fields of the current record.
+     */
+    private String[] fields = new String[16];
+    /**
+     * Current line of the file.
+     */
+    private long line = 1;
+    /**
+     * Line where the current record starts.
+     */
+    private long recordLine;
+    /**
+     * Separator of the fields.
+     */
+    private final char separator;
+    /**
+     * Indicates that the first characters of the file were decoded.
+     */
+    private boolean started;
+
+    /**
+     * Opens a CSV file.
+     *
+     * @param file
+     *            File to read.
+     * @param charset
+     *            Encoding of the file.
+     * @param fieldSeparator
+     *            Separator of the fields.
+     * @throws IOException
+     *             If the file could not be opened.
+     */
+    public CsvReader(final File file, final Charset charset,
+            final char fieldSeparator) throws IOException {
+        this.channel = new FileInputStream(file).getChannel();
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.separator = fieldSeparator;
+        this.chars.flip();
+    }
+
+    /**
+     * Adds the current field to the record.
+     */
+    private void addField() {
+        if (this.count == this.fields.length) {
+            this.fields = Arrays.copyOf(this.fields, this.count * 2);
+        }
+        this.fields[this.count++] = this.field.toString();
+        this.field.setLength(0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Retrieves a field of the current record.
+     *
+     * @param position
+     *            Position of the field.
+     * @return Value of the field.
+     */
+    public String getField(final int position) {
+        return this.fields[position];
+    }
+
+    /**
+     * Retrieves the quantity of fields of the current record.
+     *
+     * @return Quantity of fields.
+     */
+    public int getFieldCount() {
+        return this.count;
+    }
+
+    /**
+     * Retrieves the fields of the current record. The array is reused for the
+     * next record.
+     *
+     * @return Fields; only the first {@link #getFieldCount()} are valid.
+     */
+    String[] getFields() {
+        return this.fields;
+    }
+
+    /**
+     * Retrieves the line of the file where the current record starts.
+     *
+     * @return Line number, from 1.
+     */
+    public long getLine() {
+        return this.recordLine;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return False if there are not more records.
+     * @throws IOException
+     *             If there is a problem reading the file.
+     */
+    public boolean next() throws IOException {
+        boolean blank;
+        do {
+            this.count = 0;
+            this.field.setLength(0);
+            int c = this.read();
+            if (c < 0) {
+                return false;
+            }
+            this.recordLine = this.line;
+            boolean quoted = false;
+            blank = true;
+            while (c >= 0) {
+                if (quoted) {
+                    if (c == '"') {
+                        c = this.read();
+                        if (c != '"') {
+                            // End of the quoted part; c is processed again.
+                            quoted = false;
+                            continue;
+                        }
+                    } else if (c == '\n') {
+                        this.line++;
+                    }
+                    this.field.append((char) c);
+                } else if (c == '"' && this.field.length() == 0) {
+                    quoted = true;
+                    blank = false;
+                } else if (c == this.separator) {
+                    this.addField();
+                } else if (c == '\n') {
+                    this.line++;
+                    break;
+                } else if (c != '\r') {
+                    this.field.append((char) c);
+                }
+                c = this.read();
+            }
+            this.addField();
+        } while (blank && this.count == 1 && this.fields[0].length() == 0);
+        return true;
+    }
+
+    /**
+     * Reads the next character, filling the buffers when they are empty.
+     *
+     * @return The character, or -1 at the end of the file.
+     * @throws IOException
+     *             If there is a problem reading the file.
+     */
+    private int read() throws IOException {
+        while (!this.chars.hasRemaining()) {
+            if (this.eof && this.bytes.position() == 0) {
+                return -1;
+            }
+            this.chars.clear();
+            if (!this.eof && this.channel.read(this.bytes) < 0) {
+                this.eof = true;
+            }
+            this.bytes.flip();
+            this.decoder.decode(this.bytes, this.chars, this.eof);
+            if (this.eof && !this.bytes.hasRemaining()) {
+                this.decoder.flush(this.chars);
+            }
+            this.bytes.compact();
+            this.chars.flip();
+            if (!this.started && this.chars.hasRemaining()) {
+                this.started = true;
+                if (this.chars.get(0) == '\uFEFF') {
+                    this.chars.get();
+                }
+            }
+        }
+        return this.chars.get();
+    }
+}
@@ -28,6 +28,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
 
 /**
  * Applet that allows to execute SQL queries against a local/remote DB2
@@ -40,6 +44,45 @@ import java.util.ArrayList;
  * @version 2012-08-23
  */
 public class DB2Broker {
+    /**
+     * Class of the DB2 JDBC driver.
+     */
+    private static final String DRIVER_CLASS = "com.ibm.db2.jcc.DB2Driver";
+    /**
+     * Indicates that the driver is already being loaded.
+     */
+    private static final AtomicBoolean DRIVER_REQUESTED = new AtomicBoolean();
+    /**
+     * Key of the queries without a primary key, in the cache of keys.
+     */
+    private static final int[] NO_KEY = new int[0];
+    /**
+     * Quantity of connections used by the background tasks.
+     */
+    private static final int POOL_SIZE = 4;
+
+    /**
+     * Loads the classes of the JDBC driver in background, while the GUI is
+     * being built. Any problem is reported later, when connecting.
+     */
+    static void preloadDriver() {
+        if (!DRIVER_REQUESTED.compareAndSet(false, true)) {
+            return;
+        }
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Class.forName(DRIVER_CLASS);
+                } catch (ClassNotFoundException e) {
+                    // Reported when connecting.
+                }
+            }
+        }, "Driver loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Graphic interface.
      */
@@ -47,16 +90,30 @@ public class DB2Broker {
     /**
      * Database connection.
      */
-    private Connection conn;
+    private volatile Connection conn;
+    /**
+     * Key columns found for each query, thus the catalog is read once per
+     * query and not in each refresh.
+     */
+    private final ConcurrentHashMap<String, int[]> keys =
+            new ConcurrentHashMap<String, int[]>();
     /**
-     * Results of the query execution.
+     * Connections for the background tasks.
      */
-    private ResultSet result;
+    private volatile ConnectionPool pool;
     /**
-     * Statement to execute the query.
+     * Indicates that a refresh of the current result is in progress.
      */
-    private Statement stmt;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
 
+    /**
+     * Creates the broker.
+     * 
+     * @param ui
+     *            Graphic interface, or null when the broker is used without
+     *            GUI, like in the load harness. Without GUI, only
+     *            {@link #fetch(Connection, String)} can be used.
+     */
     public DB2Broker(final DB2Viewer ui) {
         this.browserUI = ui;
     }
@@ -65,9 +122,26 @@ public class DB2Broker {
      * Closes the current connection.
      */
     void closeConnection() {
-        if (this.conn != null) {
+        this.closeConnection(this.conn, this.pool);
+    }
+
+    /**
+     * Closes a connection and its pool. The connections of the pool that are
+     * in use are closed when they are released.
+     * 
+     * @param connection
+     *            Connection to close, can be null.
+     * @param connections
+     *            Pool to close, can be null.
+     */
+    private void closeConnection(final Connection connection,
+            final ConnectionPool connections) {
+        if (connections != null) {
+            connections.close();
+        }
+        if (connection != null) {
             try {
-                this.conn.close();
+                connection.close();
             } catch (SQLException e) {
                 this.showError("Error closing the connection.", e);
             }
@@ -143,7 +217,9 @@ public class DB2Broker {
             default:
                 int type = resultMetaData.getColumnType(i);
 
-                this.showError("Unknown data type: " + type, new Exception());
+                Diagnostics.warning("Unknown data type " + type
+                        + " of the column " + resultMetaData.getColumnName(i)
+                        + ", presented as VARCHAR");
                 types.add(new Integer(Types.VARCHAR));
             }
         }
@@ -176,7 +252,7 @@ public class DB2Broker {
     boolean connect(final String server, final String port,
             final String database, final String user, final String password) {
         browserUI.showStatus("Connecting");
-        final String className = "com.ibm.db2.jcc.DB2Driver";
+        final String className = DRIVER_CLASS;
 
         // Constructs the URL.
         final String url = "jdbc:db2://" + server + ':' + port + '/' + database;
@@ -186,7 +262,15 @@ public class DB2Broker {
             Class.forName(className).newInstance();
 
             // Connect to the database with user and password.
-            this.conn = DriverManager.getConnection(url, user, password);
+            final Connection connection = DriverManager.getConnection(url,
+                    user, password);
+            // Replaces the previous connection, if the user connects again.
+            final Connection previous = this.conn;
+            final ConnectionPool previousPool = this.pool;
+            this.conn = connection;
+            this.keys.clear();
+            this.pool = new ConnectionPool(url, user, password, POOL_SIZE);
+            this.closeConnection(previous, previousPool);
             ret = true;
         } catch (InstantiationException e) {
             this.showError("Instantiation problem", e);
@@ -197,10 +281,49 @@ public class DB2Broker {
         } catch (SQLException e) {
             this.showError("SQL error", e);
         }
-        browserUI.showStatus("Connected");
+        if (ret) {
+            browserUI.showStatus("Connected");
+        }
         return ret;
     }
 
+    /**
+     * Connects to the database in background, thus the GUI can be used while
+     * the connection is established. If the connection fails, the
+     * credentials are asked.
+     * 
+     * @param server
+     *            Server name.
+     * @param port
+     *            Port number (service name associated number).
+     * @param database
+     *            Database name
+     * @param user
+     *            User name.
+     * @param password
+     *            Password.
+     */
+    void connectInBackground(final String server, final String port,
+            final String database, final String user, final String password) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final boolean ret = DB2Broker.this.connect(server, port,
+                        database, user, password);
+                if (!ret) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            DB2Broker.this.getCredentials();
+                        }
+                    });
+                }
+            }
+        }, "Connect");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Executes the query against the database.
      * 
@@ -208,41 +331,138 @@ public class DB2Broker {
      *            Query to execute.
      */
     void executeQuery(final String sentence) {
+        if (this.conn == null) {
+            this.browserUI.showStatus("There is not a connection to the "
+                    + "database.");
+            return;
+        }
         this.browserUI.showStatus("Processing queries");
-        System.out.println("Executing: " + sentence);
+        final boolean inPlace = this.browserUI.isRefreshInPlace();
+        try {
+            final ResultBuffer data = this.fetch(this.conn, sentence, inPlace);
+            this.browserUI.showResult(data, inPlace);
+        } catch (SQLException e) {
+            this.showError("Error executing the query.", e);
+        }
+    }
+
+    /**
+     * Executes a query in the given connection and retrieves all its rows.
+     * This method does not interact with the GUI, thus it can be called from
+     * any thread.
+     * 
+     * @param connection
+     *            Connection where the query is executed.
+     * @param sentence
+     *            Query to execute.
+     * @return The rows of the result.
+     * @throws SQLException
+     *             If there is a problem executing the query.
+     */
+    ResultBuffer fetch(final Connection connection, final String sentence)
+            throws SQLException {
+        return this.fetch(connection, sentence, false);
+    }
+
+    /**
+     * Executes a query in the given connection and retrieves all its rows.
+     * This method does not interact with the GUI, thus it can be called from
+     * any thread.
+     * 
+     * @param connection
+     *            Connection where the query is executed.
+     * @param sentence
+     *            Query to execute.
+     * @param findKey
+     *            True to look for the primary key of the table in the
+     *            catalog, in order to match the rows of several executions.
+     * @return The rows of the result.
+     * @throws SQLException
+     *             If there is a problem executing the query.
+     */
+    ResultBuffer fetch(final Connection connection, final String sentence,
+            final boolean findKey) throws SQLException {
+        final long start = System.nanoTime();
+        long executed = start;
+        final Statement stmt = connection.createStatement();
         try {
-            this.stmt = this.conn.createStatement();
-            this.result = this.stmt.executeQuery(sentence);
+            final ResultSet result = stmt.executeQuery(sentence);
+            executed = System.nanoTime();
 
-            final ResultSetMetaData resultMetaData = this.result.getMetaData();
+            final ResultSetMetaData resultMetaData = result.getMetaData();
             // Quantity of columns.
             int columnQty = resultMetaData.getColumnCount();
             final ArrayList<String> names = this.getColumnNames(resultMetaData);
             // Column mapping.
             int[] columnType = this.columnMapping(resultMetaData, columnQty);
-            final ArrayList<ArrayList<String>> data = new ArrayList<ArrayList<String>>();
-            while (this.result.next()) {
-                final ArrayList<String> row = this.mappingAndFilling(
-                        this.result, columnQty, columnType);
-                data.add(row);
+            final ResultBuffer data = new ResultBuffer(names, columnType);
+            if (findKey) {
+                data.setKeyColumns(this.findKeyColumns(connection, sentence,
+                        resultMetaData));
+            }
+            while (result.next()) {
+                this.mappingAndFilling(result, columnQty, columnType, data);
             }
-            this.browserUI.showStatus("Closing statement.");
             try {
-                this.result.close();
+                result.close();
             } catch (SQLException e) {
                 this.showError("Error closing result.", e);
             }
+            Diagnostics.audit(sentence, (executed - start) / 1000000,
+                    (System.nanoTime() - executed) / 1000000,
+                    data.getRowCount(), "OK");
+            return data;
+        } catch (SQLException e) {
+            if (executed == start) {
+                // The execution failed.
+                executed = System.nanoTime();
+            }
+            Diagnostics.audit(sentence, (executed - start) / 1000000,
+                    (System.nanoTime() - executed) / 1000000, 0, "SQLCODE "
+                            + e.getErrorCode() + " " + e.getMessage());
+            throw e;
+        } finally {
             try {
-                this.stmt.close();
+                stmt.close();
             } catch (SQLException e) {
                 this.showError("Error closing statement.", e);
             }
-            this.browserUI.createTable(names, data);
-        } catch (SQLException e) {
-            this.showError("Error executing the query.", e);
         }
     }
 
+    /**
+     * Retrieves the position of the primary key columns of a query. The key
+     * is read from the catalog the first time, and then kept for the next
+     * executions of the same query. If the catalog cannot be read, the whole
+     * row is used as key.
+     * 
+     * @param connection
+     *            Connection to query the catalog.
+     * @param sentence
+     *            Executed query.
+     * @param metaData
+     *            Metadata of the result.
+     * @return Positions of the key columns, starting at 0, or null if the key
+     *         was not found.
+     */
+    private int[] findKeyColumns(final Connection connection,
+            final String sentence, final ResultSetMetaData metaData) {
+        int[] ret = this.keys.get(sentence);
+        if (ret == null) {
+            try {
+                ret = this.getKeyColumns(connection, metaData);
+            } catch (SQLException e) {
+                Diagnostics.warning("The key of the result was not found: "
+                        + e.getMessage());
+            }
+            if (ret == null) {
+                ret = NO_KEY;
+            }
+            this.keys.put(sentence, ret);
+        }
+        return ret == NO_KEY ? null : ret;
+    }
+
     /**
      * Retrieves the names of the columns.
      * 
@@ -271,8 +491,76 @@ public class DB2Broker {
     }
 
     /**
-     * Takes the values of the result set and put them in an array. This process
-     * is executed for each row.
+     * Retrieves the position of the primary key columns of the table that
+     * produced the result. The key is only found when all the columns come
+     * from the same table and the result contains all the columns of its
+     * primary key.
+     * 
+     * @param connection
+     *            Connection to query the catalog.
+     * @param metaData
+     *            Metadata of the result.
+     * @return Positions of the key columns, starting at 0, or null if the key
+     *         was not found.
+     * @throws SQLException
+     *             If there is a problem in the process.
+     */
+    private int[] getKeyColumns(final Connection connection,
+            final ResultSetMetaData metaData) throws SQLException {
+        final int size = metaData.getColumnCount();
+        final String schema = metaData.getSchemaName(1);
+        final String table = metaData.getTableName(1);
+        if (schema == null || table == null || table.length() == 0) {
+            return null;
+        }
+        for (int i = 2; i <= size; i++) {
+            if (!schema.equals(metaData.getSchemaName(i))
+                    || !table.equals(metaData.getTableName(i))) {
+                return null;
+            }
+        }
+
+        final ArrayList<Integer> keys = new ArrayList<Integer>();
+        final ResultSet primaryKey = connection.getMetaData().getPrimaryKeys(
+                null, schema.trim(), table);
+        try {
+            while (primaryKey.next()) {
+                final String column = primaryKey.getString("COLUMN_NAME");
+                int position = -1;
+                for (int i = 1; i <= size; i++) {
+                    if (column.equals(metaData.getColumnName(i))) {
+                        position = i - 1;
+                    }
+                }
+                if (position == -1) {
+                    return null;
+                }
+                keys.add(Integer.valueOf(position));
+            }
+        } finally {
+            primaryKey.close();
+        }
+
+        final int[] ret = new int[keys.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = keys.get(i).intValue();
+        }
+        return ret.length == 0 ? null : ret;
+    }
+
+    /**
+     * Retrieves the connections for the background tasks.
+     * 
+     * @return The pool of connections, or null if there is not a connection
+     *         to the database.
+     */
+    ConnectionPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Takes the values of the result set and put them in the buffer. This
+     * process is executed for each row.
      * 
      * @param result
      *            Result, positioned in the row to analyze.
@@ -280,12 +568,14 @@ public class DB2Broker {
      *            Quantity of columns.
      * @param columnType
      *            Types of the columns.
+     * @param buffer
+     *            Buffer where the values of the row are added.
      * @throws SQLException
      *             If there is a problem in the process.
      */
-    ArrayList<String> mappingAndFilling(final ResultSet result,
-            final int columnQty, final int[] columnType) throws SQLException {
-        final ArrayList<String> row = new ArrayList<String>();
+    void mappingAndFilling(final ResultSet result, final int columnQty,
+            final int[] columnType, final ResultBuffer buffer)
+            throws SQLException {
         int k;
 
         String value = null;
@@ -420,19 +710,68 @@ public class DB2Broker {
                 }
                 break;
             default:
-                this.showError("Unknown data type", new Exception());
+                // Already reported once per column by the mapping.
                 value = "UNKNOWN";
             }
-            row.add(value);
+            buffer.addValue(k - 1, value);
 
         }
-        return row;
+        buffer.endRow();
+    }
 
+    /**
+     * Executes again a query in background, with a connection of the pool,
+     * and refreshes the current result with the new rows. If the previous
+     * refresh has not finished, this one is skipped. The new rows are
+     * discarded if another query was executed or a snapshot was opened in the
+     * meantime. This method has to be called from the event dispatch thread.
+     * 
+     * @param sentence
+     *            Query to execute.
+     */
+    void refreshQuery(final String sentence) {
+        if (this.pool == null || !this.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        final int generation = this.browserUI.getResultGeneration();
+        final boolean inPlace = this.browserUI.isRefreshInPlace();
+        final ConnectionPool connections = this.pool;
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Connection connection = connections.acquire();
+                    final ResultBuffer data;
+                    try {
+                        data = DB2Broker.this.fetch(connection, sentence, true);
+                    } finally {
+                        connections.release(connection);
+                    }
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            final DB2Viewer ui = DB2Broker.this.browserUI;
+                            if (ui.getResultGeneration() == generation) {
+                                ui.showResult(data, inPlace);
+                            }
+                        }
+                    });
+                } catch (SQLException e) {
+                    DB2Broker.this.showError("Error refreshing the query.", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    DB2Broker.this.refreshing.set(false);
+                }
+            }
+        }, "Refresh");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
      * Displays a given error. The message in the GUI and the stack in the
-     * output.
+     * diagnostics log.
      * 
      * @param message
      *            Descriptive message.
@@ -440,9 +779,10 @@ public class DB2Broker {
      *            Exception to show.
      */
     void showError(final String message, final Exception exp) {
-        this.browserUI.showStatus("Error: " + message);
-        System.err.println("Error " + message);
-        exp.printStackTrace();
+        if (this.browserUI != null) {
+            this.browserUI.showStatus("Error: " + message);
+        }
+        Diagnostics.error(message, exp);
     }
 
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.applet.AppletContext;
+import java.applet.AppletStub;
+import java.awt.BorderLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.Properties;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * Runs the viewer as a desktop application, without a browser or an applet
+ * viewer.
+ * <p>
+ * The parameters of the applet are given in the command line as name=value,
+ * for example: <code>server=localhost port=50000 database=sample
+ * user=db2admin password=admin</code>. The window is shown before the JDBC
+ * driver is loaded and the connection is established; both happen in
+ * background.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class DB2Launcher implements AppletStub {
+    /**
+     * Time in milliseconds from the start of the JVM until the editor can be
+     * used, over which the startup is logged as a warning. It is not checked
+     * anywhere else.
+     */
+    private static final long STARTUP_BUDGET = 1000;
+
+    /**
+     * Starts the application.
+     *
+     * @param args
+     *            Parameters of the applet, as name=value.
+     */
+    public static void main(final String[] args) {
+        // The driver classes are loaded while the window is built.
+        DB2Broker.preloadDriver();
+
+        final Properties parameters = new Properties();
+        for (final String arg : args) {
+            final int pos = arg.indexOf('=');
+            if (pos > 0) {
+                parameters.setProperty(arg.substring(0, pos),
+                        arg.substring(pos + 1));
+            }
+        }
+        final DB2Launcher launcher = new DB2Launcher(parameters);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                launcher.open();
+            }
+        });
+    }
+
+    /**
+     * Parameters of the applet.
+     */
+    private final Properties parameters;
+    /**
+     * Viewer hosted in the window.
+     */
+    private DB2Viewer viewer;
+
+    /**
+     * Creates the launcher.
+     *
+     * @param params
+     *            Parameters of the applet.
+     */
+    DB2Launcher(final Properties params) {
+        this.parameters = params;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.applet.AppletStub#appletResize(int, int)
+     */
+    @Override
+    public void appletResize(final int width, final int height) {
+        // The size is defined by the window.
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.applet.AppletStub#getAppletContext()
+     */
+    @Override
+    public AppletContext getAppletContext() {
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.applet.AppletStub#getCodeBase()
+     */
+    @Override
+    public URL getCodeBase() {
+        return DB2Launcher.class.getProtectionDomain().getCodeSource()
+                .getLocation();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.applet.AppletStub#getDocumentBase()
+     */
+    @Override
+    public URL getDocumentBase() {
+        return this.getCodeBase();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.applet.AppletStub#getParameter(java.lang.String)
+     */
+    @Override
+    public String getParameter(final String name) {
+        return this.parameters.getProperty(name);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.applet.AppletStub#isActive()
+     */
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+
+    /**
+     * Creates the window and starts the viewer. Called from the event
+     * dispatch thread.
+     */
+    void open() {
+        final JFrame frame = new JFrame("DB2 Viewer");
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        frame.setSize(600, 600);
+
+        final JLabel labelStatus = new JLabel(" ");
+        labelStatus.setBorder(new EmptyBorder(2, 10, 2, 10));
+        this.viewer = new DB2Viewer();
+        this.viewer.setStub(this);
+        this.viewer.setStatusBar(labelStatus);
+        frame.getContentPane().add(this.viewer, BorderLayout.CENTER);
+        frame.getContentPane().add(labelStatus, BorderLayout.SOUTH);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(final WindowEvent e) {
+                DB2Launcher.this.viewer.stop();
+                DB2Launcher.this.viewer.destroy();
+                frame.dispose();
+                System.exit(0);
+            }
+        });
+
+        this.viewer.init();
+        frame.setVisible(true);
+        this.viewer.start();
+
+        // Measures when the editor is shown and ready for input. The status
+        // bar is soon used by the connection, thus the time is logged.
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                final long elapsed = System.currentTimeMillis()
+                        - ManagementFactory.getRuntimeMXBean().getStartTime();
+                if (elapsed > STARTUP_BUDGET) {
+                    Diagnostics.warning("Ready in " + elapsed
+                            + " ms, over the budget of " + STARTUP_BUDGET
+                            + " ms");
+                } else {
+                    Diagnostics.info("Ready in " + elapsed + " ms");
+                }
+            }
+        });
+    }
+}
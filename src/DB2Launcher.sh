@@ -0,0 +1,38 @@
+#!/bin/sh
+
+# Copyright (c) 2012 Andres Gomez Casanova
+#
+# Permission is hereby granted, free of charge, to any person obtaining a copy
+# of this software and associated documentation files (the "Software"), to deal
+# in the Software without restriction, including without limitation the rights
+# to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+# copies of the Software, and to permit persons to whom the Software is
+# furnished to do so, subject to the following conditions:
+# 
+# The above copyright notice and this permission notice shall be included in
+# all copies or substantial portions of the Software.
+# 
+# THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+# IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+# FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+# AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+# LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+# OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+# SOFTWARE.
+
+
+
+# Runs the viewer as a desktop application. With DB2VIEWER_CDS=1 (JDK 13 or
+# later), the first execution records the loaded classes in a class data
+# sharing archive, that is used by the next executions to reduce the startup
+# time.
+
+cd "$(dirname "$0")"
+CP=.:db2jcc.jar:miglayout15-swing.jar
+if [ "$DB2VIEWER_CDS" != "1" ]; then
+  exec java -cp $CP DB2Launcher "$@"
+elif [ -f db2viewer.jsa ]; then
+  exec java -XX:SharedArchiveFile=db2viewer.jsa -Xshare:auto -cp $CP DB2Launcher "$@"
+else
+  exec java -XX:ArchiveClassesAtExit=db2viewer.jsa -cp $CP DB2Launcher "$@"
+fi
@@ -22,16 +22,25 @@
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import javax.swing.JApplet;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
+import javax.swing.JTextField;
 import javax.swing.SpringLayout;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
  * Creates the main window of the applet to browse tables in DB2.
@@ -46,14 +55,60 @@ public class DB2Viewer extends JApplet implements ActionListener {
      */
     private static final long serialVersionUID = 7909104467572783948L;
 
+    /**
+     * Button to open the monitoring dashboard.
+     */
+    private JButton buttonDashboard;
+    /**
+     * Button to import a CSV file into a table.
+     */
+    private JButton buttonImport;
+    /**
+     * Button to open the diagnostics log.
+     */
+    private JButton buttonLog;
+    /**
+     * Button to open a result snapshot.
+     */
+    private JButton buttonOpen;
+    /**
+     * Button to save the current result as a snapshot.
+     */
+    private JButton buttonSave;
+    /**
+     * Option to refresh the current result instead of replacing it.
+     */
+    private JCheckBox checkRefresh;
     /**
      * DB2 logic.
      */
     private DB2Broker db2;
+    /**
+     * Bar to find a text in the results.
+     */
+    private FindBar findBar;
     /**
      * Label for the table result.
      */
     private JLabel labelResults;
+    /**
+     * Status bar used when running outside a browser.
+     */
+    private JLabel labelStatus;
+    /**
+     * Last executed query, used by the auto-refresh.
+     */
+    private String lastSentence;
+    /**
+     * Model of the table, that lives as long as the table.
+     */
+    private ResultTableModel model;
+    /**
+     * Generation of the presented result. It changes when a query is
+     * executed or a snapshot is opened, thus the refreshes of a previous
+     * result are discarded.
+     */
+    private int resultGeneration;
     /**
      * Scroll for the table.
      */
@@ -66,10 +121,18 @@ public class DB2Viewer extends JApplet implements ActionListener {
      * Table where the results are presented.
      */
     private JTable tableResults;
+    /**
+     * Seconds between automatic refreshes.
+     */
+    private JTextField textInterval;
     /**
      * Area to write the query.
      */
     private JTextArea textSentence;
+    /**
+     * Timer of the automatic refreshes.
+     */
+    private Timer timerRefresh;
 
     /**
      * Default constructor.
@@ -86,61 +149,65 @@ public class DB2Viewer extends JApplet implements ActionListener {
      */
     @Override
     public void actionPerformed(ActionEvent e) {
-        this.db2.executeQuery(textSentence.getText());
+        if (e.getSource() == this.buttonDashboard) {
+            if (this.db2.getPool() == null) {
+                this.showStatus("There is not a connection to the database.");
+            } else {
+                new MonitorDashboard(this.db2).setVisible(true);
+            }
+        } else if (e.getSource() == this.buttonImport) {
+            if (this.db2.getPool() == null) {
+                this.showStatus("There is not a connection to the database.");
+            } else {
+                new ImportWizard(this.db2).setVisible(true);
+            }
+        } else if (e.getSource() == this.buttonLog) {
+            final JFrame frame = new JFrame("Diagnostics log");
+            frame.setBounds(160, 160, 800, 400);
+            frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+            frame.setContentPane(new LogPanel());
+            frame.setVisible(true);
+        } else if (e.getSource() == this.buttonSave) {
+            this.saveSnapshot();
+        } else if (e.getSource() == this.buttonOpen) {
+            final JFileChooser chooser = this.createSnapshotChooser();
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                this.openSnapshot(chooser.getSelectedFile());
+            }
+        } else if (e.getSource() == this.timerRefresh) {
+            this.db2.refreshQuery(this.lastSentence);
+        } else if (e.getSource() == this.checkRefresh
+                || e.getSource() == this.textInterval) {
+            this.updateTimer();
+        } else {
+            this.lastSentence = textSentence.getText();
+            this.resultGeneration++;
+            this.db2.executeQuery(this.lastSentence);
+            this.updateTimer();
+        }
     }
 
     /**
-     * Converts an arraylist into an array of Strings.
+     * Creates a dialog to choose snapshot files.
      * 
-     * @param data
-     *            Data to be converted.
-     * @return array of Strings.
+     * @return A file chooser filtered by the snapshot extension.
      */
-    String[] convertArray(final ArrayList<String> data) {
-        String[] ret = new String[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-            ret[i] = data.get(i);
-        }
-        return ret;
+    private JFileChooser createSnapshotChooser() {
+        final JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Result snapshots",
+                ResultSnapshot.EXTENSION));
+        return chooser;
     }
 
     /**
-     * Creates the table with the values of the query.
+     * Retrieves the generation of the presented result. This method has to be
+     * called from the event dispatch thread.
      * 
-     * @param columnNames
-     *            Name of the columns.
-     * @param data
-     *            Data of the table.
+     * @return Generation, that changes each time the result is replaced by
+     *         another query or a snapshot.
      */
-    void createTable(final ArrayList<String> columnNames,
-            final ArrayList<ArrayList<String>> data) {
-        final String[][] dataConvered = new String[data.size()][];
-        for (int i = 0; i < data.size(); i++) {
-            dataConvered[i] = convertArray(data.get(i));
-        }
-        final String[] columnsConverted = convertArray(columnNames);
-
-        this.getContentPane().remove(this.tableResults);
-        this.getContentPane().remove(this.scrollPane);
-        this.tableResults = new JTable(dataConvered, columnsConverted);
-        this.scrollPane = new JScrollPane(tableResults,
-                JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
-                JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
-        this.tableResults.setFillsViewportHeight(true);
-
-        this.getContentPane().validate();
-        this.tableResults.validate();
-        this.tableResults.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
-
-        springLayout.putConstraint(SpringLayout.NORTH, this.scrollPane, 6,
-                SpringLayout.SOUTH, this.labelResults);
-        springLayout.putConstraint(SpringLayout.WEST, this.scrollPane, 10,
-                SpringLayout.WEST, this.getContentPane());
-        springLayout.putConstraint(SpringLayout.SOUTH, this.scrollPane, -10,
-                SpringLayout.SOUTH, this.getContentPane());
-        springLayout.putConstraint(SpringLayout.EAST, this.scrollPane, -10,
-                SpringLayout.EAST, this.getContentPane());
-        this.getContentPane().add(this.scrollPane);
+    int getResultGeneration() {
+        return this.resultGeneration;
     }
 
     /*
@@ -150,6 +217,7 @@ public class DB2Viewer extends JApplet implements ActionListener {
      */
     @Override
     public void init() {
+        DB2Broker.preloadDriver();
         initialize();
         this.db2 = new DB2Broker(this);
         showStatus("Establishing connection...");
@@ -159,7 +227,16 @@ public class DB2Viewer extends JApplet implements ActionListener {
         final String database = getParameter("database");
         final String user = getParameter("user");
         final String password = getParameter("password");
+        final String snapshot = getParameter("snapshot");
+        if (snapshot != null && !snapshot.equals("")) {
+            this.openSnapshot(new File(snapshot));
+        }
 
+        if (snapshot != null && !snapshot.equals("") && (server == null
+                || server.equals(""))) {
+            // Only presents the snapshot, without a connection.
+            return;
+        }
         if (server == null || server.equals("") || port == null
                 || port.equals("") || database == null || database.equals("")
                 || user == null || user.equals("") || password == null
@@ -167,15 +244,23 @@ public class DB2Viewer extends JApplet implements ActionListener {
             // Asks for the credentials.
             this.db2.getCredentials();
         } else {
-            // Connect with the provided parameters from the HTML.
-            final boolean ret = this.db2.connect(server, port, database, user,
+            // Connect with the provided parameters from the HTML, while the
+            // GUI is already usable.
+            this.db2.connectInBackground(server, port, database, user,
                     password);
-            if (!ret){
-                this.db2.getCredentials();
-            }
         }
     }
 
+    /**
+     * Indicates if the current result has to be refreshed in place when the
+     * query is executed again.
+     * 
+     * @return True if only the changed rows are updated in the table.
+     */
+    boolean isRefreshInPlace() {
+        return this.checkRefresh.isSelected();
+    }
+
     /**
      * Initializes the UI.
      */
@@ -199,13 +284,30 @@ public class DB2Viewer extends JApplet implements ActionListener {
                 SpringLayout.EAST, this.getContentPane());
         this.getContentPane().add(this.textSentence);
 
+        this.buttonDashboard = new JButton("Monitoring dashboard");
+        springLayout.putConstraint(SpringLayout.NORTH, this.buttonDashboard,
+                6, SpringLayout.SOUTH, this.textSentence);
+        springLayout.putConstraint(SpringLayout.EAST, this.buttonDashboard,
+                -10, SpringLayout.EAST, this.getContentPane());
+        this.buttonDashboard.addActionListener(this);
+        this.getContentPane().add(this.buttonDashboard);
+
+        this.buttonLog = new JButton("Log");
+        this.buttonLog.setToolTipText("Errors, warnings and executed queries");
+        springLayout.putConstraint(SpringLayout.NORTH, this.buttonLog, 6,
+                SpringLayout.SOUTH, this.textSentence);
+        springLayout.putConstraint(SpringLayout.EAST, this.buttonLog, -6,
+                SpringLayout.WEST, this.buttonDashboard);
+        this.buttonLog.addActionListener(this);
+        this.getContentPane().add(this.buttonLog);
+
         final JButton buttonExecute = new JButton("Execute query");
         springLayout.putConstraint(SpringLayout.NORTH, buttonExecute, 6,
                 SpringLayout.SOUTH, this.textSentence);
         springLayout.putConstraint(SpringLayout.WEST, buttonExecute, 10,
                 SpringLayout.WEST, this.getContentPane());
-        springLayout.putConstraint(SpringLayout.EAST, buttonExecute, -10,
-                SpringLayout.EAST, this.getContentPane());
+        springLayout.putConstraint(SpringLayout.EAST, buttonExecute, -6,
+                SpringLayout.WEST, this.buttonLog);
         buttonExecute.addActionListener(this);
         this.getContentPane().add(buttonExecute);
 
@@ -216,6 +318,10 @@ public class DB2Viewer extends JApplet implements ActionListener {
                 SpringLayout.NORTH, this.getContentPane());
         springLayout.putConstraint(SpringLayout.SOUTH, buttonExecute, -6,
                 SpringLayout.NORTH, separator);
+        springLayout.putConstraint(SpringLayout.SOUTH, this.buttonDashboard,
+                -6, SpringLayout.NORTH, separator);
+        springLayout.putConstraint(SpringLayout.SOUTH, this.buttonLog, -6,
+                SpringLayout.NORTH, separator);
         springLayout.putConstraint(SpringLayout.EAST, separator, -10,
                 SpringLayout.EAST, this.getContentPane());
         springLayout.putConstraint(SpringLayout.WEST, separator, 10,
@@ -229,18 +335,202 @@ public class DB2Viewer extends JApplet implements ActionListener {
                 SpringLayout.WEST, this.getContentPane());
         this.getContentPane().add(this.labelResults);
 
-        this.tableResults = new JTable();
-        this.scrollPane = new JScrollPane(tableResults);
+        this.textInterval = new JTextField("0", 4);
+        this.textInterval.setToolTipText("Seconds between refreshes of the "
+                + "last query, 0 to refresh only manually");
+        springLayout.putConstraint(SpringLayout.NORTH, this.textInterval, 6,
+                SpringLayout.SOUTH, separator);
+        springLayout.putConstraint(SpringLayout.EAST, this.textInterval, -10,
+                SpringLayout.EAST, this.getContentPane());
+        this.textInterval.addActionListener(this);
+        this.getContentPane().add(this.textInterval);
+
+        final JLabel labelInterval = new JLabel("Auto-refresh (s):");
+        springLayout.putConstraint(SpringLayout.NORTH, labelInterval, 10,
+                SpringLayout.SOUTH, separator);
+        springLayout.putConstraint(SpringLayout.EAST, labelInterval, -6,
+                SpringLayout.WEST, this.textInterval);
+        this.getContentPane().add(labelInterval);
+
+        this.checkRefresh = new JCheckBox("Refresh in place");
+        this.checkRefresh.setToolTipText("Updates only the rows that changed, "
+                + "keeping the scroll position and the selection");
+        springLayout.putConstraint(SpringLayout.NORTH, this.checkRefresh, 6,
+                SpringLayout.SOUTH, separator);
+        springLayout.putConstraint(SpringLayout.EAST, this.checkRefresh, -10,
+                SpringLayout.WEST, labelInterval);
+        this.checkRefresh.addActionListener(this);
+        this.getContentPane().add(this.checkRefresh);
+
+        this.buttonOpen = new JButton("Open snapshot");
+        this.buttonOpen.setToolTipText("Presents a saved result, without "
+                + "a connection to the database");
+        springLayout.putConstraint(SpringLayout.NORTH, this.buttonOpen, 6,
+                SpringLayout.SOUTH, separator);
+        springLayout.putConstraint(SpringLayout.WEST, this.buttonOpen, 10,
+                SpringLayout.EAST, this.labelResults);
+        this.buttonOpen.addActionListener(this);
+        this.getContentPane().add(this.buttonOpen);
+
+        this.buttonSave = new JButton("Save snapshot");
+        this.buttonSave.setToolTipText("Saves the current result in a file");
+        springLayout.putConstraint(SpringLayout.NORTH, this.buttonSave, 6,
+                SpringLayout.SOUTH, separator);
+        springLayout.putConstraint(SpringLayout.WEST, this.buttonSave, 6,
+                SpringLayout.EAST, this.buttonOpen);
+        this.buttonSave.addActionListener(this);
+        this.getContentPane().add(this.buttonSave);
+
+        this.buttonImport = new JButton("Import CSV");
+        this.buttonImport.setToolTipText("Loads a CSV file into a table");
+        springLayout.putConstraint(SpringLayout.NORTH, this.buttonImport, 6,
+                SpringLayout.SOUTH, separator);
+        springLayout.putConstraint(SpringLayout.WEST, this.buttonImport, 6,
+                SpringLayout.EAST, this.buttonSave);
+        this.buttonImport.addActionListener(this);
+        this.getContentPane().add(this.buttonImport);
+
+        this.timerRefresh = new Timer(1000, this);
+
+        this.model = new ResultTableModel(new ResultBuffer(
+                new ArrayList<String>(), new int[0]));
+        this.tableResults = new JTable(this.model);
+        this.scrollPane = new JScrollPane(tableResults,
+                JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
+                JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
         this.tableResults.setFillsViewportHeight(true);
+        this.tableResults.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
         springLayout.putConstraint(SpringLayout.NORTH, this.scrollPane, 6,
-                SpringLayout.SOUTH, this.labelResults);
+                SpringLayout.SOUTH, this.buttonOpen);
         springLayout.putConstraint(SpringLayout.WEST, this.scrollPane, 10,
                 SpringLayout.WEST, this.getContentPane());
-        springLayout.putConstraint(SpringLayout.SOUTH, this.scrollPane, -10,
-                SpringLayout.SOUTH, this.getContentPane());
         springLayout.putConstraint(SpringLayout.EAST, this.scrollPane, -10,
                 SpringLayout.EAST, this.getContentPane());
         this.getContentPane().add(this.scrollPane);
+
+        this.findBar = new FindBar(this.tableResults, this.model);
+        springLayout.putConstraint(SpringLayout.SOUTH, this.scrollPane, -6,
+                SpringLayout.NORTH, this.findBar);
+        springLayout.putConstraint(SpringLayout.WEST, this.findBar, 10,
+                SpringLayout.WEST, this.getContentPane());
+        springLayout.putConstraint(SpringLayout.SOUTH, this.findBar, -10,
+                SpringLayout.SOUTH, this.getContentPane());
+        springLayout.putConstraint(SpringLayout.EAST, this.findBar, -10,
+                SpringLayout.EAST, this.getContentPane());
+        this.getContentPane().add(this.findBar);
+    }
+
+    /**
+     * Presents a result snapshot in the table. The automatic refresh is
+     * stopped, because the snapshot does not come from the database.
+     * 
+     * @param file
+     *            Snapshot file.
+     */
+    void openSnapshot(final File file) {
+        try {
+            final ResultSnapshot snapshot = ResultSnapshot.open(file);
+            this.resultGeneration++;
+            this.checkRefresh.setSelected(false);
+            this.updateTimer();
+            this.model.setData(snapshot);
+            this.showStatus("Snapshot " + file.getName() + ": "
+                    + snapshot.getRowCount() + " rows.");
+        } catch (IOException e) {
+            this.db2.showError("Error opening the snapshot.", e);
+        }
+    }
+
+    /**
+     * Asks for a file and saves the current result in it. The file is written
+     * in background.
+     */
+    private void saveSnapshot() {
+        final JFileChooser chooser = this.createSnapshotChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File chosen = chooser.getSelectedFile();
+        if (!chosen.getName().endsWith("." + ResultSnapshot.EXTENSION)) {
+            chosen = new File(chosen.getPath() + "."
+                    + ResultSnapshot.EXTENSION);
+        }
+        final File file = chosen;
+        final ResultData data = this.model.getData();
+        this.buttonSave.setEnabled(false);
+        this.showStatus("Saving snapshot in " + file.getName() + "...");
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ResultSnapshot.write(data, file);
+                    DB2Viewer.this.showStatus("Snapshot saved in "
+                            + file.getName() + ".");
+                } catch (IOException e) {
+                    DB2Viewer.this.db2.showError("Error saving the snapshot.",
+                            e);
+                } finally {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            DB2Viewer.this.buttonSave.setEnabled(true);
+                        }
+                    });
+                }
+            }
+        }, "Snapshot");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Defines the label where the status messages are shown, when the applet
+     * does not run in a browser or applet viewer.
+     * 
+     * @param status
+     *            Status bar.
+     */
+    void setStatusBar(final JLabel status) {
+        this.labelStatus = status;
+    }
+
+    /**
+     * Presents the values of the query in the table. The table and its model
+     * are reused; in refresh mode only the rows that changed are updated.
+     * 
+     * @param data
+     *            Rows of the result, with the names of the columns.
+     * @param inPlace
+     *            True to update only the changed rows, according to the
+     *            refresh mode when the query was sent.
+     */
+    void showResult(final ResultBuffer data, final boolean inPlace) {
+        if (inPlace) {
+            this.model.refresh(data);
+        } else {
+            this.model.setData(data);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.applet.Applet#showStatus(java.lang.String)
+     */
+    @Override
+    public void showStatus(final String msg) {
+        if (this.labelStatus == null) {
+            super.showStatus(msg);
+        } else if (SwingUtilities.isEventDispatchThread()) {
+            this.labelStatus.setText(msg);
+        } else {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    DB2Viewer.this.labelStatus.setText(msg);
+                }
+            });
+        }
     }
 
     /*
@@ -250,9 +540,31 @@ public class DB2Viewer extends JApplet implements ActionListener {
      */
     @Override
     public void stop() {
+        this.timerRefresh.stop();
         this.showStatus("Closing connetion.");
         this.db2.closeConnection();
         super.stop();
     }
 
+    /**
+     * Starts or stops the automatic refresh according to the options.
+     */
+    private void updateTimer() {
+        int interval = 0;
+        try {
+            interval = Integer.parseInt(this.textInterval.getText().trim());
+        } catch (NumberFormatException e) {
+            this.showStatus("Invalid refresh interval: "
+                    + this.textInterval.getText());
+        }
+        if (this.isRefreshInPlace() && interval > 0
+                && this.lastSentence != null) {
+            this.timerRefresh.setDelay(interval * 1000);
+            this.timerRefresh.setInitialDelay(interval * 1000);
+            this.timerRefresh.restart();
+        } else {
+            this.timerRefresh.stop();
+        }
+    }
+
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the daemon threads of the background tasks, thus they do not keep
+ * the application alive. The threads are named with a prefix and a counter.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+    /**
+     * Quantity of created threads.
+     */
+    private final AtomicInteger count = new AtomicInteger();
+    /**
+     * Prefix of the names of the threads.
+     */
+    private final String prefix;
+    /**
+     * Priority of the threads.
+     */
+    private final int priority;
+
+    /**
+     * Creates a factory of threads with normal priority.
+     *
+     * @param name
+     *            Prefix of the names of the threads.
+     */
+    public DaemonThreadFactory(final String name) {
+        this(name, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * Creates a factory of threads.
+     *
+     * @param name
+     *            Prefix of the names of the threads.
+     * @param threadPriority
+     *            Priority of the threads.
+     */
+    public DaemonThreadFactory(final String name, final int threadPriority) {
+        this.prefix = name;
+        this.priority = threadPriority;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+     */
+    @Override
+    public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, this.prefix + "-"
+                + this.count.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(this.priority);
+        return thread;
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of the errors, warnings and executed queries.
+ * <p>
+ * The threads that report an event only put it in a ring buffer, without
+ * locks; if the buffer is full, the event is counted and discarded, thus the
+ * callers never wait. A background thread takes the events, limits the
+ * repeated ones, and writes them in a rotating file and in a list of recent
+ * lines, that is presented by the {@link LogPanel}.
+ * <p>
+ * The directory of the files is given by the db2viewer.logdir system
+ * property; by default it is .db2viewer in the home of the user.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public final class Diagnostics {
+
+    /**
+     * Reported event.
+     */
+    private static final class Event {
+        /**
+         * Exception, or null.
+         */
+        final Throwable error;
+        /**
+         * Level: INFO, WARN, ERROR or AUDIT.
+         */
+        final String level;
+        /**
+         * Description.
+         */
+        final String message;
+        /**
+         * Name of the thread that reported the event.
+         */
+        final String thread;
+        /**
+         * Time of the event.
+         */
+        final long time;
+
+        /**
+         * Creates an event in the current thread.
+         *
+         * @param eventLevel
+         *            Level.
+         * @param eventMessage
+         *            Description.
+         * @param exp
+         *            Exception, or null.
+         */
+        Event(final String eventLevel, final String eventMessage,
+                final Throwable exp) {
+            this.time = System.currentTimeMillis();
+            this.level = eventLevel;
+            this.message = eventMessage;
+            this.error = exp;
+            this.thread = Thread.currentThread().getName();
+        }
+    }
+
+    /**
+     * Occurrences of the same event in the current window.
+     */
+    private static final class Repeat {
+        /**
+         * Occurrences in the window.
+         */
+        int count;
+        /**
+         * Occurrences that were not written.
+         */
+        int suppressed;
+        /**
+         * Start of the window.
+         */
+        final long windowStart;
+
+        /**
+         * Starts a window.
+         *
+         * @param start
+         *            Time of the first occurrence.
+         */
+        Repeat(final long start) {
+            this.windowStart = start;
+        }
+    }
+
+    /**
+     * Size of the ring buffer; a power of two.
+     */
+    private static final int CAPACITY = 8192;
+    /**
+     * Events not written because the ring buffer was full.
+     */
+    private static final AtomicLong DROPPED = new AtomicLong();
+    /**
+     * Events taken by the writer.
+     */
+    private static final AtomicLong HEAD = new AtomicLong();
+    /**
+     * Maximal size of a file before rotating it.
+     */
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+    /**
+     * Quantity of files kept, including the current one.
+     */
+    private static final int MAX_FILES = 5;
+    /**
+     * Maximal lines written per second, the audit records excluded.
+     */
+    private static final int MAX_LINES_PER_SECOND = 200;
+    /**
+     * Maximal occurrences of the same event written per window.
+     */
+    private static final int MAX_REPEATS = 5;
+    /**
+     * Quantity of recent lines kept for the log panel.
+     */
+    private static final int RECENT_SIZE = 1000;
+    /**
+     * Events reported and not yet taken by the writer.
+     */
+    private static final AtomicReferenceArray<Event> RING =
+            new AtomicReferenceArray<Event>(CAPACITY);
+    /**
+     * Events reserved by the reporting threads.
+     */
+    private static final AtomicLong TAIL = new AtomicLong();
+    /**
+     * Duration of the window of the repeated events.
+     */
+    private static final long WINDOW = 60000;
+    /**
+     * Writer of the events.
+     */
+    private static final Diagnostics WRITER = new Diagnostics();
+
+    static {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WRITER.write();
+            }
+        }, "Diagnostics");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (WRITER) {
+                        WRITER.drain();
+                        WRITER.close();
+                    }
+                }
+            }, "Diagnostics shutdown"));
+        } catch (SecurityException e) {
+            // In a sandbox the last events can be lost.
+        }
+    }
+
+    /**
+     * Reports the execution of a query.
+     *
+     * @param sentence
+     *            Executed query.
+     * @param executeMillis
+     *            Time until the result was available.
+     * @param fetchMillis
+     *            Time to read the rows.
+     * @param rows
+     *            Quantity of rows read.
+     * @param outcome
+     *            OK, or the error.
+     */
+    static void audit(final String sentence, final long executeMillis,
+            final long fetchMillis, final int rows, final String outcome) {
+        report(new Event("AUDIT", "execute=" + executeMillis + "ms fetch="
+                + fetchMillis + "ms rows=" + rows + " outcome=" + outcome
+                + " sql=" + sentence.replace('\n', ' '), null));
+    }
+
+    /**
+     * Reports an error.
+     *
+     * @param message
+     *            Description.
+     * @param exp
+     *            Cause of the error, or null.
+     */
+    static void error(final String message, final Throwable exp) {
+        report(new Event("ERROR", message, exp));
+    }
+
+    /**
+     * Retrieves the directory of the files.
+     *
+     * @return Directory given by the db2viewer.logdir property.
+     */
+    private static File getDirectory() {
+        return new File(System.getProperty("db2viewer.logdir",
+                System.getProperty("user.home") + File.separator
+                        + ".db2viewer"));
+    }
+
+    /**
+     * Retrieves the lines written after a given one.
+     *
+     * @param after
+     *            Number of the last line already retrieved; -1 for all the
+     *            recent lines.
+     * @param lines
+     *            List where the new lines are added.
+     * @return Number of the last line.
+     */
+    static long getRecent(final long after, final ArrayList<String> lines) {
+        synchronized (WRITER.recent) {
+            final long first = Math.max(after + 1, WRITER.written
+                    - WRITER.recent.length);
+            for (long i = first; i < WRITER.written; i++) {
+                lines.add(WRITER.recent[(int) (i % WRITER.recent.length)]);
+            }
+            return WRITER.written - 1;
+        }
+    }
+
+    /**
+     * Reports an informative event.
+     *
+     * @param message
+     *            Description.
+     */
+    static void info(final String message) {
+        report(new Event("INFO", message, null));
+    }
+
+    /**
+     * Puts an event in the ring buffer, or discards it if the buffer is full.
+     *
+     * @param event
+     *            Reported event.
+     */
+    private static void report(final Event event) {
+        long position;
+        do {
+            position = TAIL.get();
+            if (position - HEAD.get() >= CAPACITY) {
+                DROPPED.incrementAndGet();
+                return;
+            }
+        } while (!TAIL.compareAndSet(position, position + 1));
+        RING.lazySet((int) (position & (CAPACITY - 1)), event);
+    }
+
+    /**
+     * Reports a warning.
+     *
+     * @param message
+     *            Description.
+     */
+    static void warning(final String message) {
+        report(new Event("WARN", message, null));
+    }
+
+    /**
+     * Formats the dates of the lines.
+     */
+    private final SimpleDateFormat format = new SimpleDateFormat(
+            "yyyy-MM-dd HH:mm:ss.SSS");
+    /**
+     * Events of the last second not written by the global limit.
+     */
+    private int limited;
+    /**
+     * Lines written in the current second.
+     */
+    private int lines;
+    /**
+     * Current file, or null if it could not be opened.
+     */
+    private Writer out;
+    /**
+     * Recent lines, in a circular array.
+     */
+    private final String[] recent = new String[RECENT_SIZE];
+    /**
+     * Occurrences of each event in its window.
+     */
+    private final HashMap<String, Repeat> repeats =
+            new HashMap<String, Repeat>();
+    /**
+     * Start of the current second.
+     */
+    private long second;
+    /**
+     * Size of the current file.
+     */
+    private long size;
+    /**
+     * Quantity of lines written since the start.
+     */
+    private long written;
+
+    /**
+     * Private constructor; there is only one writer.
+     */
+    private Diagnostics() {
+        // Nothing.
+    }
+
+    /**
+     * Closes the current file.
+     */
+    private void close() {
+        if (this.out != null) {
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                // Nothing else can be done.
+            }
+            this.out = null;
+        }
+    }
+
+    /**
+     * Writes the events of the ring buffer.
+     *
+     * @return True if there was at least one event.
+     */
+    private boolean drain() {
+        boolean ret = false;
+        Event event = RING.get((int) (HEAD.get() & (CAPACITY - 1)));
+        while (event != null) {
+            RING.set((int) (HEAD.get() & (CAPACITY - 1)), null);
+            HEAD.incrementAndGet();
+            this.process(event);
+            ret = true;
+            event = RING.get((int) (HEAD.get() & (CAPACITY - 1)));
+        }
+        final long dropped = DROPPED.getAndSet(0);
+        if (dropped > 0) {
+            this.writeLine(System.currentTimeMillis(), "WARN", "Diagnostics",
+                    dropped + " events discarded, the buffer was full");
+        }
+        if (ret && this.out != null) {
+            try {
+                this.out.flush();
+            } catch (IOException e) {
+                this.close();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the summaries of the windows that ended, and forgets them.
+     *
+     * @param now
+     *            Current time.
+     */
+    private void expire(final long now) {
+        final Iterator<Map.Entry<String, Repeat>> iter = this.repeats
+                .entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<String, Repeat> entry = iter.next();
+            if (now - entry.getValue().windowStart >= WINDOW) {
+                this.summarize(entry.getKey(), entry.getValue(), now);
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Opens the current file, in the log directory.
+     */
+    private void open() {
+        try {
+            final File dir = getDirectory();
+            final File file = new File(dir, "db2viewer.log");
+            dir.mkdirs();
+            this.size = file.length();
+            this.out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), "UTF-8"));
+        } catch (IOException e) {
+            this.out = null;
+        } catch (SecurityException e) {
+            // The applet cannot write files; only the panel is used.
+            this.out = null;
+        }
+    }
+
+    /**
+     * Writes an event, unless it is repeated too often or there are too many
+     * lines in the current second.
+     *
+     * @param event
+     *            Event to write.
+     */
+    private void process(final Event event) {
+        if ("AUDIT".equals(event.level)) {
+            this.writeEvent(event);
+            return;
+        }
+        final String key = event.level + ' ' + event.message + ' '
+                + (event.error == null ? "" : event.error.getClass().getName());
+        Repeat repeat = this.repeats.get(key);
+        if (repeat == null || event.time - repeat.windowStart >= WINDOW) {
+            if (repeat != null) {
+                this.summarize(key, repeat, event.time);
+            }
+            repeat = new Repeat(event.time);
+            this.repeats.put(key, repeat);
+        }
+        repeat.count++;
+        if (repeat.count > MAX_REPEATS) {
+            repeat.suppressed++;
+            return;
+        }
+
+        if (event.time - this.second >= 1000) {
+            if (this.limited > 0) {
+                this.writeLine(event.time, "WARN", "Diagnostics", this.limited
+                        + " events discarded, more than "
+                        + MAX_LINES_PER_SECOND + " per second");
+            }
+            this.second = event.time;
+            this.lines = 0;
+            this.limited = 0;
+        }
+        if (this.lines >= MAX_LINES_PER_SECOND) {
+            this.limited++;
+            return;
+        }
+        this.lines++;
+        this.writeEvent(event);
+    }
+
+    /**
+     * Renames the current file and opens a new one. The oldest file is
+     * deleted.
+     */
+    private void rotate() {
+        this.close();
+        try {
+            final File dir = getDirectory();
+            new File(dir, "db2viewer.log." + (MAX_FILES - 1)).delete();
+            for (int i = MAX_FILES - 2; i >= 1; i--) {
+                new File(dir, "db2viewer.log." + i).renameTo(new File(dir,
+                        "db2viewer.log." + (i + 1)));
+            }
+            new File(dir, "db2viewer.log").renameTo(new File(dir,
+                    "db2viewer.log.1"));
+        } catch (SecurityException e) {
+            // The files cannot be rotated; the log is opened again.
+        }
+        this.open();
+    }
+
+    /**
+     * Writes how many times an event was not written in its window.
+     *
+     * @param key
+     *            Level and message of the event.
+     * @param repeat
+     *            Occurrences in the window.
+     * @param now
+     *            Current time.
+     */
+    private void summarize(final String key, final Repeat repeat,
+            final long now) {
+        if (repeat.suppressed > 0) {
+            this.writeLine(now, "WARN", "Diagnostics", "Repeated "
+                    + repeat.suppressed + " more times: " + key.trim());
+        }
+    }
+
+    /**
+     * Takes the events of the ring buffer while the application runs. Waits
+     * a little when there are not events; the reporting threads never
+     * signal this thread.
+     */
+    private void write() {
+        this.open();
+        long lastExpire = System.currentTimeMillis();
+        while (true) {
+            final boolean found;
+            synchronized (this) {
+                found = this.drain();
+                final long now = System.currentTimeMillis();
+                if (now - lastExpire >= 1000) {
+                    this.expire(now);
+                    lastExpire = now;
+                }
+            }
+            if (!found) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        }
+    }
+
+    /**
+     * Writes an event, with the stack of its exception.
+     *
+     * @param event
+     *            Event to write.
+     */
+    private void writeEvent(final Event event) {
+        String text = event.message;
+        if (event.error != null) {
+            final StringWriter stack = new StringWriter();
+            event.error.printStackTrace(new PrintWriter(stack));
+            text += System.getProperty("line.separator")
+                    + stack.toString().trim();
+        }
+        this.writeLine(event.time, event.level, event.thread, text);
+    }
+
+    /**
+     * Writes a line in the file and in the recent lines.
+     *
+     * @param time
+     *            Time of the event.
+     * @param level
+     *            Level of the event.
+     * @param thread
+     *            Thread that reported the event.
+     * @param text
+     *            Description.
+     */
+    private void writeLine(final long time, final String level,
+            final String thread, final String text) {
+        final String line = this.format.format(new Date(time)) + ' ' + level
+                + " [" + thread + "] " + text;
+        synchronized (this.recent) {
+            this.recent[(int) (this.written % this.recent.length)] = line;
+            this.written++;
+        }
+        if (this.out == null) {
+            return;
+        }
+        try {
+            this.out.write(line);
+            this.out.write(System.getProperty("line.separator"));
+            this.size += line.length() + 1;
+            if (this.size >= MAX_FILE_SIZE) {
+                this.rotate();
+            }
+        } catch (IOException e) {
+            this.close();
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import net.miginfocom.swing.MigLayout;
+
+/**
+ * Bar to find a text in the cells of the result table. The cells are indexed
+ * and searched in background, thus the table can be scrolled while the
+ * result is indexed; the matching cells are highlighted, and the buttons
+ * step through them.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class FindBar extends JPanel implements ActionListener,
+        DocumentListener, TableModelListener {
+
+    /**
+     * Renderer that highlights the matching cells.
+     */
+    private final class MatchRenderer extends DefaultTableCellRenderer {
+        /**
+         * Generated ID.
+         */
+        private static final long serialVersionUID = -3317406342826043372L;
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * javax.swing.table.DefaultTableCellRenderer#getTableCellRendererComponent
+         * (javax.swing.JTable, java.lang.Object, boolean, boolean, int, int)
+         */
+        @Override
+        public Component getTableCellRendererComponent(final JTable table,
+                final Object value, final boolean isSelected,
+                final boolean hasFocus, final int row, final int column) {
+            final Component ret = super.getTableCellRendererComponent(table,
+                    value, isSelected, hasFocus, row, column);
+            if (!isSelected) {
+                ret.setBackground(FindBar.this.isMatch(row,
+                        table.convertColumnIndexToModel(column)) ? HIGHLIGHT
+                        : table.getBackground());
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Background of the matching cells.
+     */
+    private static final Color HIGHLIGHT = new Color(255, 240, 120);
+    /**
+     * Generated ID.
+     */
+    private static final long serialVersionUID = 5185360471766911538L;
+
+    /**
+     * Finds a text in an index. An error is written in the diagnostics log,
+     * and the search ends without matches.
+     *
+     * @param target
+     *            Index of the result.
+     * @param text
+     *            Text to find.
+     * @return Matching cells.
+     * @throws InterruptedException
+     *             If the thread was interrupted.
+     */
+    private static long[] find(final ResultIndex target, final String text)
+            throws InterruptedException {
+        try {
+            return target.find(text);
+        } catch (RuntimeException e) {
+            Diagnostics.error("Error finding the text.", e);
+            return new long[0];
+        }
+    }
+
+    /**
+     * Button to go to the next match.
+     */
+    private final JButton buttonNext;
+    /**
+     * Button to go to the previous match.
+     */
+    private final JButton buttonPrevious;
+    /**
+     * Indicates if the matches come from a complete index.
+     */
+    private boolean complete = true;
+    /**
+     * Position of the current match, -1 if there is not.
+     */
+    private int current = -1;
+    /**
+     * Index of the current result.
+     */
+    private ResultIndex index;
+    /**
+     * Thread that builds the indexes and executes the searches.
+     */
+    private final ExecutorService indexer;
+    /**
+     * Position and quantity of the matches.
+     */
+    private final JLabel labelMatches;
+    /**
+     * Matching cells, as row << 32 | column, sorted.
+     */
+    private long[] matches = new long[0];
+    /**
+     * Model of the table.
+     */
+    private final ResultTableModel model;
+    /**
+     * Indicates that the index will be built again.
+     */
+    private boolean rebuildPending;
+    /**
+     * Threads that scan the columns in parallel.
+     */
+    private final ExecutorService scanners;
+    /**
+     * Counter of the searches, to discard the results of the old ones.
+     */
+    private final AtomicInteger searches = new AtomicInteger();
+    /**
+     * Table where the matches are highlighted.
+     */
+    private final JTable table;
+    /**
+     * Text to find.
+     */
+    private final JTextField textFind;
+
+    /**
+     * Creates the bar.
+     *
+     * @param results
+     *            Table of the results.
+     * @param tableModel
+     *            Model of the table, that lives as long as the table.
+     */
+    public FindBar(final JTable results, final ResultTableModel tableModel) {
+        this.table = results;
+        this.model = tableModel;
+        final DaemonThreadFactory daemons = new DaemonThreadFactory("Find",
+                Thread.MIN_PRIORITY);
+        this.indexer = Executors.newSingleThreadExecutor(daemons);
+        this.scanners = Executors.newFixedThreadPool(Runtime.getRuntime()
+                .availableProcessors(), daemons);
+
+        this.setLayout(new MigLayout("insets 0", "[][grow][][][]", "[]"));
+        this.add(new JLabel("Find:"));
+        this.textFind = new JTextField();
+        this.textFind.getDocument().addDocumentListener(this);
+        this.textFind.addActionListener(this);
+        this.add(this.textFind, "growx");
+        this.buttonPrevious = new JButton("Previous");
+        this.buttonPrevious.addActionListener(this);
+        this.add(this.buttonPrevious);
+        this.buttonNext = new JButton("Next");
+        this.buttonNext.addActionListener(this);
+        this.add(this.buttonNext);
+        this.labelMatches = new JLabel(" ");
+        this.add(this.labelMatches, "wmin 120");
+
+        this.table.setDefaultRenderer(Object.class, new MatchRenderer());
+        this.model.addTableModelListener(this);
+        this.rebuild();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(final ActionEvent e) {
+        if (this.matches.length == 0) {
+            return;
+        }
+        if (e.getSource() == this.buttonPrevious) {
+            this.current = this.current <= 0 ? this.matches.length - 1
+                    : this.current - 1;
+        } else {
+            // Next button or enter in the text.
+            this.current = (this.current + 1) % this.matches.length;
+        }
+        this.showCurrent();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.swing.event.DocumentListener#changedUpdate(javax.swing.event.
+     * DocumentEvent)
+     */
+    @Override
+    public void changedUpdate(final DocumentEvent e) {
+        // Only the text is important.
+    }
+
+    /**
+     * Repeats the search when an index is complete, if the presented matches
+     * come from that index while it was being built.
+     *
+     * @param target
+     *            Index that was completed.
+     */
+    private void indexed(final ResultIndex target) {
+        if (target == this.index && !this.complete) {
+            this.search();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.swing.event.DocumentListener#insertUpdate(javax.swing.event.
+     * DocumentEvent)
+     */
+    @Override
+    public void insertUpdate(final DocumentEvent e) {
+        this.search();
+    }
+
+    /**
+     * Checks if a cell contains the text being searched.
+     *
+     * @param row
+     *            Row of the cell.
+     * @param column
+     *            Column of the cell in the model.
+     * @return True if the cell is highlighted.
+     */
+    boolean isMatch(final int row, final int column) {
+        return Arrays.binarySearch(this.matches, ((long) row << 32) | column)
+                >= 0;
+    }
+
+    /**
+     * Creates the index of the current result, and repeats the search. When
+     * the result was refreshed, the new index reuses the rows that did not
+     * change.
+     */
+    private void rebuild() {
+        this.rebuildPending = false;
+        final ResultData data = this.model.getData();
+        if (this.index != null && this.index.getData() == data) {
+            return;
+        }
+        if (this.index == null) {
+            // Starts mapping the refreshes of the model.
+            this.model.takeRowMapping(data);
+            this.index = new ResultIndex(data, this.indexer, this.scanners);
+        } else {
+            this.index.cancel();
+            final int[] rows = this.model.takeRowMapping(this.index
+                    .getData());
+            if (rows == null) {
+                this.index = new ResultIndex(data, this.indexer,
+                        this.scanners);
+            } else {
+                this.index = new ResultIndex(data, this.index, rows,
+                        this.indexer, this.scanners);
+            }
+        }
+        final ResultIndex target = this.index;
+        this.index.start(new Runnable() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        FindBar.this.indexed(target);
+                    }
+                });
+            }
+        });
+        this.search();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.swing.event.DocumentListener#removeUpdate(javax.swing.event.
+     * DocumentEvent)
+     */
+    @Override
+    public void removeUpdate(final DocumentEvent e) {
+        this.search();
+    }
+
+    /**
+     * Finds the text in background. The matches are presented when the
+     * search finishes, if the text and the result did not change meanwhile.
+     */
+    private void search() {
+        final String text = this.textFind.getText();
+        final int search = this.searches.incrementAndGet();
+        if (text.length() == 0) {
+            this.showMatches(new long[0], true);
+            return;
+        }
+        final ResultIndex target = this.index;
+        this.indexer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (search != FindBar.this.searches.get()) {
+                    return;
+                }
+                final long[] found;
+                try {
+                    found = FindBar.find(target, text);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                final boolean complete = target.isComplete();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (search == FindBar.this.searches.get()) {
+                            FindBar.this.showMatches(found, complete);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Selects the current match, and scrolls the table to it.
+     */
+    private void showCurrent() {
+        final int row = (int) (this.matches[this.current] >>> 32);
+        final int column = this.table.convertColumnIndexToView(
+                (int) this.matches[this.current]);
+        this.table.changeSelection(row, column, false, false);
+        this.updateLabel();
+    }
+
+    /**
+     * Presents the matches of a search.
+     *
+     * @param found
+     *            Matching cells.
+     * @param indexed
+     *            Indicates if the result was completely indexed.
+     */
+    private void showMatches(final long[] found, final boolean indexed) {
+        this.matches = found;
+        this.complete = indexed;
+        this.current = -1;
+        this.updateLabel();
+        this.table.repaint();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.swing.event.TableModelListener#tableChanged(javax.swing.event.
+     * TableModelEvent)
+     */
+    @Override
+    public void tableChanged(final TableModelEvent e) {
+        // A refresh in place fires many events; the index is built once.
+        if (!this.rebuildPending) {
+            this.rebuildPending = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    FindBar.this.rebuild();
+                }
+            });
+        }
+    }
+
+    /**
+     * Presents the position and the quantity of the matches.
+     */
+    private void updateLabel() {
+        if (this.textFind.getText().length() == 0) {
+            this.labelMatches.setText(" ");
+            return;
+        }
+        String text;
+        if (this.matches.length == 0) {
+            text = "No matches";
+        } else if (this.current < 0) {
+            text = this.matches.length + " matches";
+        } else {
+            text = (this.current + 1) + " of " + this.matches.length;
+        }
+        if (this.matches.length >= ResultIndex.MAX_MATCHES) {
+            text += "+";
+        }
+        if (!this.complete) {
+            text += " (indexing)";
+        }
+        this.labelMatches.setText(text);
+    }
+}
@@ -0,0 +1,706 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import javax.swing.DefaultCellEditor;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+
+import net.miginfocom.swing.MigLayout;
+
+/**
+ * Window to load a CSV file into a table. The table is chosen from the
+ * catalog, the fields of the file are mapped to the columns of the table, and
+ * the import runs in background while its throughput is shown.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class ImportWizard extends JFrame implements ActionListener {
+    /**
+     * Text of the columns that are not loaded.
+     */
+    private static final String NONE = "(none)";
+    /**
+     * Generated ID.
+     */
+    private static final long serialVersionUID = -4475520357069281446L;
+
+    /**
+     * Describes the options used to read a file, to detect if they changed
+     * after the mapping.
+     *
+     * @param file
+     *            CSV file.
+     * @param separator
+     *            Separator of the fields.
+     * @param header
+     *            Indicates if the first record has the names.
+     * @param charset
+     *            Encoding of the file.
+     * @return Description of the options.
+     */
+    private static String describe(final File file, final char separator,
+            final boolean header, final Charset charset) {
+        return file.getAbsolutePath() + '\n' + separator + '\n' + header
+                + '\n' + charset.name();
+    }
+
+    /**
+     * Quotes an identifier for SQL.
+     *
+     * @param name
+     *            Identifier as in the catalog.
+     * @return Delimited identifier.
+     */
+    private static String quote(final String name) {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * DB2 logic.
+     */
+    private final DB2Broker broker;
+    /**
+     * Button to choose the file.
+     */
+    private final JButton buttonBrowse;
+    /**
+     * Button to cancel the import.
+     */
+    private final JButton buttonCancel;
+    /**
+     * Button to read the columns of the table and the fields of the file.
+     */
+    private final JButton buttonMap;
+    /**
+     * Button to start the import.
+     */
+    private final JButton buttonStart;
+    /**
+     * Option that indicates that the first record has the names.
+     */
+    private final JCheckBox checkHeader;
+    /**
+     * Names of the columns of the table.
+     */
+    private final ArrayList<String> columnNames = new ArrayList<String>();
+    /**
+     * JDBC types of the columns of the table.
+     */
+    private int[] columnTypes = new int[0];
+    /**
+     * Encoding of the file.
+     */
+    private final JComboBox<String> comboCharset;
+    /**
+     * Fields of the file, in the mapping editor.
+     */
+    private final JComboBox<String> comboFields;
+    /**
+     * Tables of the database.
+     */
+    private final JComboBox<String> comboTable;
+    /**
+     * Import being executed.
+     */
+    private CsvImport csvImport;
+    /**
+     * Names of the fields of the file.
+     */
+    private final ArrayList<String> fieldNames = new ArrayList<String>();
+    /**
+     * Progress of the import.
+     */
+    private final JLabel labelStatus;
+    /**
+     * Mapping of the columns: column, type and field.
+     */
+    private final DefaultTableModel mapping;
+    /**
+     * Options of the file for which the mapping was created.
+     */
+    private String mappedOptions;
+    /**
+     * Table name for which the mapping was created.
+     */
+    private String mappedTable;
+    /**
+     * Time when the import started.
+     */
+    private long started;
+    /**
+     * Rows in each batch.
+     */
+    private final JTextField textBatch;
+    /**
+     * Rows between commits.
+     */
+    private final JTextField textCommit;
+    /**
+     * CSV file.
+     */
+    private final JTextField textFile;
+    /**
+     * File for the rejected rows.
+     */
+    private final JTextField textReject;
+    /**
+     * Separator of the fields.
+     */
+    private final JTextField textSeparator;
+    /**
+     * Updates the progress while the import runs.
+     */
+    private final Timer timerProgress;
+
+    /**
+     * Creates the wizard, and loads the names of the tables in background.
+     *
+     * @param db2
+     *            DB2 logic, already connected.
+     */
+    public ImportWizard(final DB2Broker db2) {
+        this.broker = db2;
+        this.setTitle("Import CSV");
+        this.setBounds(140, 140, 700, 500);
+        this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        final JPanel panelRoot = new JPanel(new BorderLayout());
+        panelRoot.setBorder(new EmptyBorder(5, 5, 5, 5));
+        this.setContentPane(panelRoot);
+
+        final JPanel panelOptions = new JPanel(new MigLayout("",
+                "[][grow][][60px][][60px]", "[][][][][]"));
+        panelOptions.add(new JLabel("File:"), "cell 0 0,alignx trailing");
+        this.textFile = new JTextField();
+        panelOptions.add(this.textFile, "cell 1 0 4 1,growx");
+        this.buttonBrowse = new JButton("Browse...");
+        this.buttonBrowse.addActionListener(this);
+        panelOptions.add(this.buttonBrowse, "cell 5 0,growx");
+
+        panelOptions.add(new JLabel("Table:"), "cell 0 1,alignx trailing");
+        this.comboTable = new JComboBox<String>();
+        this.comboTable.setEditable(true);
+        this.comboTable.setToolTipText("Schema and name of the table");
+        panelOptions.add(this.comboTable, "cell 1 1 4 1,growx");
+        this.buttonMap = new JButton("Map columns");
+        this.buttonMap.setToolTipText("Reads the columns of the table and "
+                + "the fields of the file");
+        this.buttonMap.addActionListener(this);
+        panelOptions.add(this.buttonMap, "cell 5 1,growx");
+
+        panelOptions.add(new JLabel("Separator:"), "cell 0 2,alignx trailing");
+        this.textSeparator = new JTextField(",", 2);
+        this.textSeparator.setToolTipText("One character, or \\t for tab");
+        panelOptions.add(this.textSeparator, "cell 1 2,split 2");
+        this.checkHeader = new JCheckBox("First record has the names", true);
+        panelOptions.add(this.checkHeader, "cell 1 2");
+        panelOptions.add(new JLabel("Batch:"), "cell 2 2,alignx trailing");
+        this.textBatch = new JTextField("500");
+        this.textBatch.setToolTipText("Rows sent to the database at once");
+        panelOptions.add(this.textBatch, "cell 3 2,growx");
+        panelOptions.add(new JLabel("Commit:"), "cell 4 2,alignx trailing");
+        this.textCommit = new JTextField("10000");
+        this.textCommit.setToolTipText("Rows inserted by each connection "
+                + "between commits");
+        panelOptions.add(this.textCommit, "cell 5 2,growx");
+
+        panelOptions.add(new JLabel("Rejects:"), "cell 0 3,alignx trailing");
+        this.textReject = new JTextField();
+        this.textReject.setToolTipText("File for the rows that could not be "
+                + "loaded; empty to only count them");
+        panelOptions.add(this.textReject, "cell 1 3 5 1,growx");
+
+        panelOptions.add(new JLabel("Encoding:"), "cell 0 4,alignx trailing");
+        this.comboCharset = new JComboBox<String>(new String[] {
+                Charset.defaultCharset().name(), "UTF-8", "ISO-8859-1",
+                "windows-1252", "UTF-16" });
+        this.comboCharset.setEditable(true);
+        this.comboCharset.setToolTipText("Encoding of the file");
+        panelOptions.add(this.comboCharset, "cell 1 4");
+        panelRoot.add(panelOptions, BorderLayout.NORTH);
+
+        this.mapping = new DefaultTableModel(new Object[] { "Column", "Type",
+                "Field of the file" }, 0) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isCellEditable(final int row, final int column) {
+                return column == 2;
+            }
+        };
+        final JTable tableMapping = new JTable(this.mapping);
+        this.comboFields = new JComboBox<String>();
+        tableMapping.getColumnModel().getColumn(2)
+                .setCellEditor(new DefaultCellEditor(this.comboFields));
+        panelRoot.add(new JScrollPane(tableMapping), BorderLayout.CENTER);
+
+        final JPanel panelProgress = new JPanel(new MigLayout("insets 0",
+                "[grow][][]", "[]"));
+        this.labelStatus = new JLabel(" ");
+        panelProgress.add(this.labelStatus, "cell 0 0,growx");
+        this.buttonStart = new JButton("Import");
+        this.buttonStart.addActionListener(this);
+        panelProgress.add(this.buttonStart, "cell 1 0");
+        this.buttonCancel = new JButton("Cancel");
+        this.buttonCancel.setEnabled(false);
+        this.buttonCancel.addActionListener(this);
+        panelProgress.add(this.buttonCancel, "cell 2 0");
+        panelRoot.add(panelProgress, BorderLayout.SOUTH);
+
+        this.timerProgress = new Timer(500, this);
+        this.loadTables();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(final ActionEvent e) {
+        if (e.getSource() == this.timerProgress) {
+            this.showProgress("Importing");
+        } else if (e.getSource() == this.buttonBrowse) {
+            final JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                final File file = chooser.getSelectedFile();
+                this.textFile.setText(file.getPath());
+                this.textReject.setText(file.getPath() + ".reject");
+            }
+        } else if (e.getSource() == this.buttonMap) {
+            this.loadMapping();
+        } else if (e.getSource() == this.buttonCancel) {
+            if (this.csvImport != null) {
+                this.csvImport.cancel();
+            }
+        } else if (e.getSource() == this.buttonStart) {
+            this.start();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.awt.Window#dispose()
+     */
+    @Override
+    public void dispose() {
+        this.timerProgress.stop();
+        if (this.csvImport != null) {
+            this.csvImport.cancel();
+        }
+        super.dispose();
+    }
+
+    /**
+     * Retrieves the chosen encoding of the file.
+     *
+     * @return The encoding, or null if it is not supported; then the problem
+     *         is shown in the status.
+     */
+    private Charset getCharset() {
+        final String name = String.valueOf(
+                this.comboCharset.getSelectedItem()).trim();
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            this.labelStatus.setText("Unsupported encoding: " + name);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the separator of the fields. The tab, that cannot be typed in
+     * the text, is given as \t.
+     *
+     * @return The separator, or 0 if it is not valid; then the problem is
+     *         shown in the status.
+     */
+    private char getSeparator() {
+        final String separator = this.textSeparator.getText();
+        if (separator.equals("\\t")) {
+            return '\t';
+        }
+        if (separator.length() != 1) {
+            this.labelStatus.setText("The separator has to be one character, "
+                    + "or \\t for tab");
+            return 0;
+        }
+        return separator.charAt(0);
+    }
+
+    /**
+     * Reads the columns of the table and the first record of the file in
+     * background, and proposes a mapping: the field with the same name as the
+     * column or, without names, the field in the same position.
+     */
+    private void loadMapping() {
+        final String table = String.valueOf(this.comboTable.getSelectedItem())
+                .trim();
+        final File file = new File(this.textFile.getText());
+        final boolean header = this.checkHeader.isSelected();
+        if (table.length() == 0) {
+            this.labelStatus.setText("Choose a table");
+            return;
+        }
+        final char separator = this.getSeparator();
+        final Charset charset = separator == 0 ? null : this.getCharset();
+        if (charset == null) {
+            return;
+        }
+        final String options = describe(file, separator, header, charset);
+        this.labelStatus.setText("Reading the columns...");
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<String> names = new ArrayList<String>();
+                final ArrayList<Integer> types = new ArrayList<Integer>();
+                final ArrayList<String> typeNames = new ArrayList<String>();
+                final ArrayList<String> fields = new ArrayList<String>();
+                try {
+                    final ConnectionPool pool = ImportWizard.this.broker
+                            .getPool();
+                    final Connection conn = pool.acquire();
+                    try {
+                        final int pos = table.indexOf('.');
+                        final String schema = pos < 0 ? conn.getMetaData()
+                                .getUserName().toUpperCase() : table
+                                .substring(0, pos);
+                        final String name = table.substring(pos + 1);
+                        final ResultSet columns = conn.getMetaData()
+                                .getColumns(null, schema, name, "%");
+                        try {
+                            while (columns.next()) {
+                                names.add(columns.getString("COLUMN_NAME"));
+                                types.add(columns.getInt("DATA_TYPE"));
+                                typeNames.add(columns.getString("TYPE_NAME"));
+                            }
+                        } finally {
+                            columns.close();
+                        }
+                    } finally {
+                        pool.release(conn);
+                    }
+
+                    final CsvReader reader = new CsvReader(file, charset,
+                            separator);
+                    try {
+                        if (reader.next()) {
+                            for (int i = 0; i < reader.getFieldCount(); i++) {
+                                fields.add(header ? reader.getField(i)
+                                        : "Field " + (i + 1));
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                } catch (SQLException e) {
+                    ImportWizard.this.broker.showError(
+                            "Error reading the columns.", e);
+                    return;
+                } catch (IOException e) {
+                    ImportWizard.this.broker.showError(
+                            "Error reading the file.", e);
+                    return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        ImportWizard.this.showMapping(table, options, names,
+                                types, typeNames, fields);
+                    }
+                });
+            }
+        }, "Import mapping");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Loads the names of the tables in background, except the ones of the
+     * system schemas.
+     */
+    private void loadTables() {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<String> tables = new ArrayList<String>();
+                try {
+                    final ConnectionPool pool = ImportWizard.this.broker
+                            .getPool();
+                    final Connection conn = pool.acquire();
+                    try {
+                        final DatabaseMetaData meta = conn.getMetaData();
+                        final ResultSet rs = meta.getTables(null, null, "%",
+                                new String[] { "TABLE" });
+                        try {
+                            while (rs.next()) {
+                                final String schema = rs.getString(
+                                        "TABLE_SCHEM").trim();
+                                if (!schema.startsWith("SYS")) {
+                                    tables.add(schema + '.'
+                                            + rs.getString("TABLE_NAME"));
+                                }
+                            }
+                        } finally {
+                            rs.close();
+                        }
+                    } finally {
+                        pool.release(conn);
+                    }
+                } catch (SQLException e) {
+                    ImportWizard.this.broker.showError(
+                            "Error reading the tables.", e);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final String table : tables) {
+                            ImportWizard.this.comboTable.addItem(table);
+                        }
+                    }
+                });
+            }
+        }, "Import tables");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Presents the counters of the import.
+     *
+     * @param state
+     *            State of the import.
+     */
+    private void showProgress(final String state) {
+        final long elapsed = Math.max(1, System.currentTimeMillis()
+                - this.started);
+        this.labelStatus.setText(state + ": " + this.csvImport.getRead()
+                + " read, " + this.csvImport.getInserted() + " inserted, "
+                + this.csvImport.getRejected() + " rejected, "
+                + (this.csvImport.getInserted() * 1000 / elapsed)
+                + " rows/s");
+    }
+
+    /**
+     * Presents the proposed mapping. Called from the event dispatch thread.
+     *
+     * @param table
+     *            Table of the columns.
+     * @param options
+     *            Options used to read the file.
+     * @param names
+     *            Names of the columns.
+     * @param types
+     *            JDBC types of the columns.
+     * @param typeNames
+     *            Names of the types in the database.
+     * @param fields
+     *            Names of the fields of the file.
+     */
+    private void showMapping(final String table, final String options,
+            final ArrayList<String> names, final ArrayList<Integer> types,
+            final ArrayList<String> typeNames, final ArrayList<String> fields) {
+        if (names.isEmpty()) {
+            this.labelStatus.setText("The table " + table + " does not exist");
+            return;
+        }
+        this.mappedOptions = options;
+        this.mappedTable = table;
+        this.columnNames.clear();
+        this.columnNames.addAll(names);
+        this.columnTypes = new int[types.size()];
+        this.fieldNames.clear();
+        this.fieldNames.addAll(fields);
+        this.comboFields.removeAllItems();
+        this.comboFields.addItem(NONE);
+        for (final String field : fields) {
+            this.comboFields.addItem(field);
+        }
+        this.mapping.setRowCount(0);
+        for (int i = 0; i < names.size(); i++) {
+            this.columnTypes[i] = types.get(i).intValue();
+            String field = NONE;
+            for (final String candidate : fields) {
+                if (candidate.trim().equalsIgnoreCase(names.get(i))) {
+                    field = candidate;
+                }
+            }
+            if (NONE.equals(field) && !this.checkHeader.isSelected()
+                    && i < fields.size()) {
+                field = fields.get(i);
+            }
+            this.mapping.addRow(new Object[] { names.get(i),
+                    typeNames.get(i), field });
+        }
+        this.labelStatus.setText(names.size() + " columns, " + fields.size()
+                + " fields");
+    }
+
+    /**
+     * Starts the import in background with the current mapping.
+     */
+    private void start() {
+        final ArrayList<String> names = new ArrayList<String>();
+        final ArrayList<Integer> types = new ArrayList<Integer>();
+        final ArrayList<Integer> positions = new ArrayList<Integer>();
+        for (int i = 0; i < this.mapping.getRowCount(); i++) {
+            final int position = this.fieldNames.indexOf(this.mapping
+                    .getValueAt(i, 2));
+            if (position >= 0) {
+                names.add(this.columnNames.get(i));
+                types.add(this.columnTypes[i]);
+                positions.add(position);
+            }
+        }
+        if (names.isEmpty()) {
+            this.labelStatus.setText("Map at least one column");
+            return;
+        }
+        final int batch;
+        final int commit;
+        try {
+            batch = Integer.parseInt(this.textBatch.getText().trim());
+            commit = Integer.parseInt(this.textCommit.getText().trim());
+        } catch (NumberFormatException e) {
+            this.labelStatus.setText("Invalid batch or commit size");
+            return;
+        }
+        if (batch <= 0 || commit <= 0) {
+            this.labelStatus.setText("The batch and commit sizes have to be "
+                    + "positive");
+            return;
+        }
+        final File file = new File(this.textFile.getText());
+        final boolean header = this.checkHeader.isSelected();
+        final char separator = this.getSeparator();
+        final Charset charset = separator == 0 ? null : this.getCharset();
+        if (charset == null) {
+            return;
+        }
+        if (!file.isFile()) {
+            this.labelStatus.setText("The file " + file + " does not exist");
+            return;
+        }
+        if (!describe(file, separator, header, charset).equals(
+                this.mappedOptions)) {
+            this.labelStatus.setText("The file options changed, map the "
+                    + "columns again");
+            return;
+        }
+
+        final int pos = this.mappedTable.indexOf('.');
+        final String table = pos < 0 ? quote(this.mappedTable) : quote(
+                this.mappedTable.substring(0, pos).trim())
+                + '.'
+                + quote(this.mappedTable.substring(pos + 1));
+        final int[] columnTypesArray = new int[types.size()];
+        final int[] fieldPositions = new int[positions.size()];
+        for (int i = 0; i < types.size(); i++) {
+            columnTypesArray[i] = types.get(i).intValue();
+            fieldPositions[i] = positions.get(i).intValue();
+        }
+        final CsvImport task = new CsvImport(this.broker.getPool(), file,
+                table, names.toArray(new String[0]), columnTypesArray,
+                fieldPositions);
+        task.setBatchSize(batch);
+        task.setCharset(charset);
+        task.setCommitInterval(commit);
+        task.setHeader(header);
+        task.setSeparator(separator);
+        final String reject = this.textReject.getText().trim();
+        task.setRejectFile(reject.length() == 0 ? null : new File(reject));
+
+        this.csvImport = task;
+        this.started = System.currentTimeMillis();
+        this.buttonStart.setEnabled(false);
+        this.buttonCancel.setEnabled(true);
+        this.timerProgress.start();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String state = "Failed";
+                try {
+                    task.run();
+                    state = task.isCancelled() ? "Cancelled" : "Finished";
+                } catch (IOException e) {
+                    ImportWizard.this.broker.showError(
+                            "Error reading the file.", e);
+                } catch (SQLException e) {
+                    ImportWizard.this.broker.showError(
+                            "Error inserting the rows.", e);
+                } catch (InterruptedException e) {
+                    state = "Interrupted";
+                } catch (RuntimeException e) {
+                    ImportWizard.this.broker.showError(
+                            "Error importing the file.", e);
+                } finally {
+                    Diagnostics.info(state + " import of " + task.getRead()
+                            + " rows into " + table + ": "
+                            + task.getInserted() + " inserted, "
+                            + task.getRejected() + " rejected");
+                    final String finalState = state;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            ImportWizard.this.timerProgress.stop();
+                            ImportWizard.this.showProgress(finalState);
+                            ImportWizard.this.buttonStart.setEnabled(true);
+                            ImportWizard.this.buttonCancel.setEnabled(false);
+                        }
+                    });
+                }
+            }
+        }, "Import");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
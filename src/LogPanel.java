@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Presents the recent lines of the diagnostics log. The new lines are read
+ * twice per second while the panel is shown.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class LogPanel extends JPanel implements ActionListener {
+    /**
+     * Maximal quantity of lines presented.
+     */
+    private static final int MAX_LINES = 1000;
+    /**
+     * Generated ID.
+     */
+    private static final long serialVersionUID = 2217862290612417935L;
+
+    /**
+     * Number of the last line presented.
+     */
+    private long last = -1;
+    /**
+     * Presented lines.
+     */
+    private final JTextArea textLog;
+    /**
+     * Reads the new lines.
+     */
+    private final Timer timerRead;
+
+    /**
+     * Creates the panel.
+     */
+    public LogPanel() {
+        super(new BorderLayout());
+        this.textLog = new JTextArea();
+        this.textLog.setEditable(false);
+        this.textLog.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        this.add(new JScrollPane(this.textLog), BorderLayout.CENTER);
+        this.timerRead = new Timer(500, this);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(final ActionEvent e) {
+        final ArrayList<String> lines = new ArrayList<String>();
+        this.last = Diagnostics.getRecent(this.last, lines);
+        if (lines.isEmpty()) {
+            return;
+        }
+        final StringBuilder text = new StringBuilder();
+        for (final String line : lines) {
+            text.append(line).append('\n');
+        }
+        this.textLog.append(text.toString());
+        final int extra = this.textLog.getLineCount() - MAX_LINES;
+        if (extra > 0) {
+            try {
+                this.textLog.replaceRange(null, 0,
+                        this.textLog.getLineStartOffset(extra));
+            } catch (BadLocationException ex) {
+                this.textLog.setText("");
+            }
+        }
+        this.textLog.setCaretPosition(this.textLog.getDocument().getLength());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.swing.JComponent#addNotify()
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        this.timerRead.start();
+        this.actionPerformed(null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.swing.JComponent#removeNotify()
+     */
+    @Override
+    public void removeNotify() {
+        this.timerRead.stop();
+        super.removeNotify();
+    }
+}
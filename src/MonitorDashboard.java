@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.TitledBorder;
+
+import net.miginfocom.swing.MigLayout;
+
+/**
+ * Window that periodically executes a set of monitoring queries (MON_GET_*
+ * table functions) and presents each result in its own grid.
+ * <p>
+ * The queries are executed concurrently in the connections of the pool. A
+ * query is not executed again while its previous execution has not finished;
+ * the refreshes that arrive meanwhile are skipped. For BIGINT columns, which
+ * are the counters of the monitoring functions, the grid shows the difference
+ * with the previous execution for the rows that have the same key. The key
+ * columns can be given for each query; by default they are the columns that
+ * are not BIGINT, and the identifiers (MEMBER, *_HANDLE and *_ID).
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class MonitorDashboard extends JFrame implements ActionListener {
+
+    /**
+     * Definition and state of a monitoring query.
+     */
+    private static final class MonitorQuery {
+        /**
+         * Border of the grid, that shows the state of the query.
+         */
+        TitledBorder border;
+        /**
+         * Seconds between executions.
+         */
+        final int interval;
+        /**
+         * Names of the key columns, in upper case; empty for the default
+         * keys.
+         */
+        final HashSet<String> keys;
+        /**
+         * Model of the grid.
+         */
+        final ResultTableModel model;
+        /**
+         * Descriptive name.
+         */
+        final String name;
+        /**
+         * Result of the previous execution. Only accessed by the thread that
+         * executes the query.
+         */
+        ResultBuffer previous;
+        /**
+         * Indicates that an execution is in progress.
+         */
+        final AtomicBoolean running = new AtomicBoolean();
+        /**
+         * SQL of the query.
+         */
+        final String sentence;
+        /**
+         * Quantity of refreshes skipped because the previous execution had
+         * not finished.
+         */
+        final AtomicInteger skipped = new AtomicInteger();
+
+        /**
+         * Creates a monitoring query.
+         *
+         * @param name
+         *            Descriptive name.
+         * @param sentence
+         *            SQL of the query.
+         * @param interval
+         *            Seconds between executions.
+         * @param keyNames
+         *            Names of the key columns; empty for the default keys.
+         */
+        MonitorQuery(final String name, final String sentence,
+                final int interval, final HashSet<String> keyNames) {
+            this.name = name;
+            this.sentence = sentence;
+            this.interval = interval;
+            this.keys = keyNames;
+            this.model = new ResultTableModel(new ResultBuffer(
+                    new ArrayList<String>(), new int[0]));
+        }
+    }
+
+    /**
+     * Indicates that a key appears in several rows.
+     */
+    private static final Integer DUPLICATED = Integer.valueOf(-1);
+    /**
+     * Generated ID.
+     */
+    private static final long serialVersionUID = -1850713279052553186L;
+
+    /**
+     * Calculates the difference of the counters between two executions of
+     * the same query.
+     *
+     * @param previous
+     *            Result of the previous execution, or null if this is the
+     *            first one.
+     * @param current
+     *            Result of the last execution.
+     * @param keyNames
+     *            Names of the key columns, in upper case; empty for the
+     *            default keys.
+     * @return A new result with the same rows as the current one, where the
+     *         counters are the difference with the previous execution. The
+     *         rows are identified by the key columns; the rows whose key is
+     *         not unique are shown without difference.
+     */
+    static ResultBuffer delta(final ResultBuffer previous,
+            final ResultBuffer current, final Set<String> keyNames) {
+        final int columnQty = current.getColumnCount();
+        final ArrayList<String> names = new ArrayList<String>();
+        final int[] types = new int[columnQty];
+        final boolean[] counters = new boolean[columnQty];
+        final ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < columnQty; i++) {
+            final String name = current.getColumnName(i);
+            names.add(name);
+            types[i] = current.getColumnType(i);
+            if (isKey(name.toUpperCase(), types[i], keyNames)) {
+                keys.add(Integer.valueOf(i));
+            } else {
+                counters[i] = types[i] == Types.BIGINT;
+            }
+        }
+        final int[] keyColumns = new int[keys.size()];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyColumns[i] = keys.get(i).intValue();
+        }
+        current.setKeyColumns(keyColumns);
+
+        final HashMap<String, Integer> previousRows =
+                new HashMap<String, Integer>();
+        if (previous != null
+                && ResultBuffer.sameColumns(previous, current)) {
+            // The keys could have changed since the previous execution.
+            previous.setKeyColumns(keyColumns);
+            for (int i = 0; i < previous.getRowCount(); i++) {
+                if (previousRows.put(previous.getKey(i), Integer.valueOf(i))
+                        != null) {
+                    previousRows.put(previous.getKey(i), DUPLICATED);
+                }
+            }
+        }
+        final HashSet<String> currentKeys = new HashSet<String>();
+        for (int i = 0; i < current.getRowCount(); i++) {
+            if (!currentKeys.add(current.getKey(i))) {
+                previousRows.put(current.getKey(i), DUPLICATED);
+            }
+        }
+
+        final ResultBuffer ret = new ResultBuffer(names, types);
+        ret.setKeyColumns(keyColumns);
+        for (int i = 0; i < current.getRowCount(); i++) {
+            Integer previousRow = previousRows.get(current.getKey(i));
+            if (previousRow != null && previousRow.intValue() < 0) {
+                // Ambiguous: the counters of another row could be used.
+                previousRow = null;
+            }
+            for (int j = 0; j < columnQty; j++) {
+                String value = current.getValue(i, j);
+                if (previousRow != null && counters[j]) {
+                    final String before = previous.getValue(
+                            previousRow.intValue(), j);
+                    if (!"NULL".equals(value) && !"NULL".equals(before)) {
+                        value = new BigDecimal(value).subtract(
+                                new BigDecimal(before)).toPlainString();
+                    }
+                }
+                ret.addValue(j, value);
+            }
+            ret.endRow();
+        }
+        return ret;
+    }
+
+    /**
+     * Checks if a column identifies the rows.
+     *
+     * @param name
+     *            Name of the column, in upper case.
+     * @param type
+     *            JDBC type of the column.
+     * @param keyNames
+     *            Names of the key columns given by the user; empty for the
+     *            default keys.
+     * @return True if the column is part of the key.
+     */
+    private static boolean isKey(final String name, final int type,
+            final Set<String> keyNames) {
+        if (!keyNames.isEmpty()) {
+            return keyNames.contains(name);
+        }
+        return type != Types.BIGINT || name.equals("MEMBER")
+                || name.endsWith("_HANDLE") || name.endsWith("_ID");
+    }
+
+    /**
+     * DB2 logic.
+     */
+    private final DB2Broker broker;
+    /**
+     * Status of the dashboard.
+     */
+    private final JLabel labelStatus;
+    /**
+     * Panel that contains the grids.
+     */
+    private final JPanel panelGrids;
+    /**
+     * Queries of the dashboard.
+     */
+    private final ArrayList<MonitorQuery> queries = new ArrayList<MonitorQuery>();
+    /**
+     * Triggers the executions of the queries.
+     */
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Text of the interval.
+     */
+    private final JTextField textInterval;
+    /**
+     * Names of the key columns.
+     */
+    private final JTextField textKeys;
+    /**
+     * Text of the name.
+     */
+    private final JTextField textName;
+    /**
+     * Text of the query.
+     */
+    private final JTextField textSentence;
+    /**
+     * Threads that execute the queries.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Creates the dashboard.
+     *
+     * @param db2
+     *            DB2 logic, already connected.
+     */
+    public MonitorDashboard(final DB2Broker db2) {
+        this.broker = db2;
+        final DaemonThreadFactory daemons = new DaemonThreadFactory(
+                "Monitor");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemons);
+        this.workers = Executors.newFixedThreadPool(db2.getPool().getSize(),
+                daemons);
+
+        this.setTitle("Monitoring dashboard");
+        this.setBounds(120, 120, 900, 600);
+        this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        final JPanel panelRoot = new JPanel(new BorderLayout());
+        panelRoot.setBorder(new EmptyBorder(5, 5, 5, 5));
+        this.setContentPane(panelRoot);
+
+        final JPanel panelQuery = new JPanel(new MigLayout("",
+                "[][100px][][40px][][grow][][150px][]", "[]"));
+        panelQuery.add(new JLabel("Name:"), "cell 0 0,alignx trailing");
+        this.textName = new JTextField();
+        this.textName.setToolTipText("Title of the grid");
+        this.textName.setText("Connections");
+        panelQuery.add(this.textName, "cell 1 0,growx");
+
+        panelQuery.add(new JLabel("Every (s):"), "cell 2 0,alignx trailing");
+        this.textInterval = new JTextField();
+        this.textInterval.setToolTipText("Seconds between refreshes");
+        this.textInterval.setText("10");
+        panelQuery.add(this.textInterval, "cell 3 0,growx");
+
+        panelQuery.add(new JLabel("Query:"), "cell 4 0,alignx trailing");
+        this.textSentence = new JTextField();
+        this.textSentence.setToolTipText("Monitoring query to refresh");
+        this.textSentence.setText("SELECT APPLICATION_HANDLE, "
+                + "APPLICATION_NAME, ROWS_READ, ROWS_RETURNED, "
+                + "TOTAL_CPU_TIME FROM TABLE(MON_GET_CONNECTION(NULL, -2))");
+        panelQuery.add(this.textSentence, "cell 5 0,growx");
+
+        panelQuery.add(new JLabel("Keys:"), "cell 6 0,alignx trailing");
+        this.textKeys = new JTextField();
+        this.textKeys.setToolTipText("Columns that identify the rows, "
+                + "separated by commas; empty for the columns that are not "
+                + "counters");
+        this.textKeys.setText("APPLICATION_HANDLE");
+        panelQuery.add(this.textKeys, "cell 7 0,growx");
+
+        final JButton buttonAdd = new JButton("Add");
+        buttonAdd.setToolTipText("Adds a grid refreshed with this query");
+        buttonAdd.addActionListener(this);
+        panelQuery.add(buttonAdd, "cell 8 0");
+        panelRoot.add(panelQuery, BorderLayout.NORTH);
+
+        this.panelGrids = new JPanel(new GridLayout(0, 2, 5, 5));
+        panelRoot.add(new JScrollPane(this.panelGrids), BorderLayout.CENTER);
+
+        this.labelStatus = new JLabel(" ");
+        panelRoot.add(this.labelStatus, BorderLayout.SOUTH);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(final ActionEvent event) {
+        final int interval;
+        try {
+            interval = Integer.parseInt(this.textInterval.getText().trim());
+        } catch (NumberFormatException e) {
+            this.labelStatus.setText("Invalid interval: "
+                    + this.textInterval.getText());
+            return;
+        }
+        if (interval <= 0) {
+            this.labelStatus.setText("The interval has to be positive");
+            return;
+        }
+        final HashSet<String> keys = new HashSet<String>();
+        for (final String key : this.textKeys.getText().split(",")) {
+            if (key.trim().length() > 0) {
+                keys.add(key.trim().toUpperCase());
+            }
+        }
+        final MonitorQuery query = new MonitorQuery(this.textName.getText(),
+                this.textSentence.getText(), interval, keys);
+        this.queries.add(query);
+
+        final JTable table = new JTable(query.model);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.setFillsViewportHeight(true);
+        final JScrollPane scroll = new JScrollPane(table);
+        query.border = BorderFactory.createTitledBorder(query.name);
+        scroll.setBorder(query.border);
+        this.panelGrids.add(scroll);
+        this.panelGrids.revalidate();
+
+        this.scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (query.running.compareAndSet(false, true)) {
+                    MonitorDashboard.this.workers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            MonitorDashboard.this.refresh(query);
+                        }
+                    });
+                } else {
+                    query.skipped.incrementAndGet();
+                }
+            }
+        }, 0, interval, TimeUnit.SECONDS);
+        this.labelStatus.setText(this.queries.size() + " queries");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.awt.Window#dispose()
+     */
+    @Override
+    public void dispose() {
+        this.scheduler.shutdownNow();
+        this.workers.shutdownNow();
+        super.dispose();
+    }
+
+    /**
+     * Executes a monitoring query and updates its grid. Called from a worker
+     * thread.
+     *
+     * @param query
+     *            Query to execute.
+     */
+    private void refresh(final MonitorQuery query) {
+        final ConnectionPool pool = this.broker.getPool();
+        try {
+            final long start = System.currentTimeMillis();
+            final Connection conn = pool.acquire();
+            final ResultBuffer current;
+            try {
+                current = this.broker.fetch(conn, query.sentence);
+            } finally {
+                pool.release(conn);
+            }
+            final ResultBuffer shown = delta(query.previous, current,
+                    query.keys);
+            query.previous = current;
+            final String title = query.name + " (" + query.interval + "s, "
+                    + (System.currentTimeMillis() - start) + " ms, "
+                    + query.skipped.get() + " skipped)";
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    query.model.refresh(shown);
+                    query.border.setTitle(title);
+                    MonitorDashboard.this.panelGrids.repaint();
+                }
+            });
+        } catch (SQLException e) {
+            this.broker.showError("Error refreshing " + query.name, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            query.running.set(false);
+        }
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Column oriented storage of the rows returned by a query.
+ * <p>
+ * Character columns (CHAR and VARCHAR) usually have few distinct values, like
+ * status codes, country codes or flags. These columns are stored as an array
+ * of int codes plus a dictionary with the distinct values, while the quantity
+ * of distinct values is below {@link #DICTIONARY_LIMIT}. When a column goes
+ * beyond that limit, it is converted to plain storage.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class ResultBuffer implements ResultData {
+    /**
+     * Maximal quantity of distinct values in a dictionary encoded column.
+     */
+    static final int DICTIONARY_LIMIT = 1024;
+    /**
+     * Initial quantity of rows of each column.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Storage of the values of a column.
+     */
+    private abstract static class Column {
+        /**
+         * Quantity of values in the column.
+         */
+        int size;
+
+        /**
+         * Appends a value at the end of the column.
+         *
+         * @param value
+         *            Value to add.
+         * @return False if the value could not be stored in this kind of
+         *         column.
+         */
+        abstract boolean add(final String value);
+
+        /**
+         * Retrieves a value of the column.
+         *
+         * @param row
+         *            Position of the value.
+         * @return The value.
+         */
+        abstract String get(final int row);
+    }
+
+    /**
+     * Column that keeps each value as a String.
+     */
+    private static final class PlainColumn extends Column {
+        /**
+         * Values of the column.
+         */
+        String[] values;
+
+        /**
+         * Creates an empty column.
+         *
+         * @param capacity
+         *            Initial capacity.
+         */
+        PlainColumn(final int capacity) {
+            this.values = new String[capacity];
+        }
+
+        @Override
+        boolean add(final String value) {
+            if (this.size == this.values.length) {
+                final String[] newValues = new String[this.size * 2];
+                System.arraycopy(this.values, 0, newValues, 0, this.size);
+                this.values = newValues;
+            }
+            this.values[this.size++] = value;
+            return true;
+        }
+
+        @Override
+        String get(final int row) {
+            return this.values[row];
+        }
+    }
+
+    /**
+     * Column that keeps each value as a code of a dictionary.
+     */
+    private static final class DictionaryColumn extends Column {
+        /**
+         * Code of each value.
+         */
+        int[] codes;
+        /**
+         * Distinct values, the position is the code.
+         */
+        final ArrayList<String> dictionary = new ArrayList<String>();
+        /**
+         * Code associated to each distinct value.
+         */
+        final HashMap<String, Integer> lookup = new HashMap<String, Integer>();
+
+        /**
+         * Creates an empty column.
+         *
+         * @param capacity
+         *            Initial capacity.
+         */
+        DictionaryColumn(final int capacity) {
+            this.codes = new int[capacity];
+        }
+
+        @Override
+        boolean add(final String value) {
+            final int code = this.encode(value);
+            if (code == -1) {
+                return false;
+            }
+            if (this.size == this.codes.length) {
+                final int[] newCodes = new int[this.size * 2];
+                System.arraycopy(this.codes, 0, newCodes, 0, this.size);
+                this.codes = newCodes;
+            }
+            this.codes[this.size++] = code;
+            return true;
+        }
+
+        /**
+         * Retrieves the code of a value, adding it to the dictionary if it is
+         * new.
+         *
+         * @param value
+         *            Value to encode.
+         * @return The code, or -1 if the dictionary is full.
+         */
+        private int encode(final String value) {
+            Integer code = this.lookup.get(value);
+            if (code == null) {
+                if (this.dictionary.size() == DICTIONARY_LIMIT) {
+                    return -1;
+                }
+                code = Integer.valueOf(this.dictionary.size());
+                this.dictionary.add(value);
+                this.lookup.put(value, code);
+            }
+            return code.intValue();
+        }
+
+        @Override
+        String get(final int row) {
+            return this.dictionary.get(this.codes[row]);
+        }
+
+        /**
+         * Converts this column to plain storage.
+         *
+         * @return A column with the same values.
+         */
+        PlainColumn toPlain() {
+            final PlainColumn plain = new PlainColumn(Math.max(
+                    this.codes.length, INITIAL_CAPACITY));
+            for (int i = 0; i < this.size; i++) {
+                plain.add(this.get(i));
+            }
+            return plain;
+        }
+    }
+
+    /**
+     * Checks if two results have the same columns.
+     *
+     * @param first
+     *            Result to compare.
+     * @param second
+     *            Result to compare.
+     * @return True if the names and the types of the columns are the same.
+     */
+    static boolean sameColumns(final ResultData first,
+            final ResultData second) {
+        if (first.getColumnCount() != second.getColumnCount()) {
+            return false;
+        }
+        for (int i = 0; i < first.getColumnCount(); i++) {
+            if (!first.getColumnName(i).equals(second.getColumnName(i))
+                    || first.getColumnType(i) != second.getColumnType(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Storage of each column.
+     */
+    private final Column[] columns;
+    /**
+     * Columns that identify a row, or null if the whole row is the key.
+     */
+    private int[] keyColumns;
+    /**
+     * Names of the columns.
+     */
+    private final String[] names;
+    /**
+     * Quantity of complete rows.
+     */
+    private int rowQty;
+    /**
+     * Types of the columns, according to java.sql.Types.
+     */
+    private final int[] types;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param columnNames
+     *            Names of the columns.
+     * @param columnTypes
+     *            Types of the columns, as returned by columnMapping.
+     */
+    ResultBuffer(final ArrayList<String> columnNames, final int[] columnTypes) {
+        this.names = columnNames.toArray(new String[columnNames.size()]);
+        this.types = columnTypes;
+        this.columns = new Column[columnTypes.length];
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (columnTypes[i] == Types.CHAR
+                    || columnTypes[i] == Types.VARCHAR) {
+                this.columns[i] = new DictionaryColumn(INITIAL_CAPACITY);
+            } else {
+                this.columns[i] = new PlainColumn(INITIAL_CAPACITY);
+            }
+        }
+    }
+
+    /**
+     * Appends a value to the given column. When all the values of a row have
+     * been added, {@link #endRow()} has to be called.
+     *
+     * @param column
+     *            Position of the column, starting at 0.
+     * @param value
+     *            Value to add.
+     */
+    void addValue(final int column, final String value) {
+        if (!this.columns[column].add(value)) {
+            this.toPlain(column);
+            this.columns[column].add(value);
+        }
+    }
+
+    /**
+     * Indicates that all the values of the current row were added.
+     */
+    void endRow() {
+        this.rowQty++;
+    }
+
+    /**
+     * Retrieves the code of a value in a dictionary encoded column. Two values
+     * of the same column are equal if and only if their codes are equal.
+     *
+     * @param row
+     *            Position of the row, starting at 0.
+     * @param column
+     *            Position of the column, starting at 0.
+     * @return The code of the value.
+     */
+    int getCode(final int row, final int column) {
+        return ((DictionaryColumn) this.columns[column]).codes[row];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getColumnCount()
+     */
+    @Override
+    public int getColumnCount() {
+        return this.columns.length;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getColumnName(int)
+     */
+    @Override
+    public String getColumnName(final int column) {
+        return this.names[column];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getColumnType(int)
+     */
+    @Override
+    public int getColumnType(final int column) {
+        return this.types[column];
+    }
+
+    /**
+     * Retrieves the quantity of distinct values of a dictionary encoded
+     * column.
+     *
+     * @param column
+     *            Position of the column, starting at 0.
+     * @return Quantity of codes.
+     */
+    int getDictionarySize(final int column) {
+        return ((DictionaryColumn) this.columns[column]).dictionary.size();
+    }
+
+    /**
+     * Retrieves the value associated to a code of a dictionary encoded column.
+     *
+     * @param column
+     *            Position of the column, starting at 0.
+     * @param code
+     *            Code of the value.
+     * @return The value.
+     */
+    String getDictionaryValue(final int column, final int code) {
+        return ((DictionaryColumn) this.columns[column]).dictionary.get(code);
+    }
+
+    /**
+     * Retrieves the key of a row, built with the values of the key columns.
+     *
+     * @param row
+     *            Position of the row, starting at 0.
+     * @return Key of the row.
+     */
+    String getKey(final int row) {
+        final StringBuilder key = new StringBuilder();
+        if (this.keyColumns == null) {
+            for (int i = 0; i < this.columns.length; i++) {
+                key.append(this.columns[i].get(row)).append('\u0000');
+            }
+        } else {
+            for (int i = 0; i < this.keyColumns.length; i++) {
+                key.append(this.columns[this.keyColumns[i]].get(row)).append(
+                        '\u0000');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Retrieves the columns that identify a row.
+     *
+     * @return Positions of the key columns, or null if the whole row is the
+     *         key.
+     */
+    int[] getKeyColumns() {
+        return this.keyColumns;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getRowCount()
+     */
+    @Override
+    public int getRowCount() {
+        return this.rowQty;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getValue(int, int)
+     */
+    @Override
+    public String getValue(final int row, final int column) {
+        return this.columns[column].get(row);
+    }
+
+    /**
+     * Checks if a column is stored with a dictionary.
+     *
+     * @param column
+     *            Position of the column, starting at 0.
+     * @return True if the values of the column are stored as codes.
+     */
+    boolean isDictionaryEncoded(final int column) {
+        return this.columns[column] instanceof DictionaryColumn;
+    }
+
+    /**
+     * Compares a row of this result with a row of another result with the
+     * same columns.
+     *
+     * @param row
+     *            Position of the row in this result, starting at 0.
+     * @param other
+     *            Result to compare.
+     * @param otherRow
+     *            Position of the row in the other result.
+     * @return True if all the values are equal.
+     */
+    boolean rowEquals(final int row, final ResultBuffer other,
+            final int otherRow) {
+        for (int i = 0; i < this.columns.length; i++) {
+            final String value = this.columns[i].get(row);
+            final String otherValue = other.getValue(otherRow, i);
+            if (value == null ? otherValue != null : !value
+                    .equals(otherValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Defines the columns that identify a row, used to match the rows of two
+     * executions of the same query.
+     *
+     * @param columns
+     *            Positions of the key columns, starting at 0, or null if the
+     *            whole row is the key.
+     */
+    void setKeyColumns(final int[] columns) {
+        this.keyColumns = columns;
+    }
+
+    /**
+     * Converts a dictionary encoded column to plain storage, because it has
+     * too many distinct values.
+     *
+     * @param column
+     *            Position of the column, starting at 0.
+     */
+    private void toPlain(final int column) {
+        this.columns[column] = ((DictionaryColumn) this.columns[column])
+                .toPlain();
+    }
+}
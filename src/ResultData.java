@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Rows and columns of a result that can be presented in the table, either
+ * fetched from the database or read from a snapshot.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+interface ResultData {
+
+    /**
+     * Retrieves the quantity of columns.
+     *
+     * @return Quantity of columns.
+     */
+    int getColumnCount();
+
+    /**
+     * Retrieves the name of a column.
+     *
+     * @param column
+     *            Position of the column, starting at 0.
+     * @return Name of the column.
+     */
+    String getColumnName(int column);
+
+    /**
+     * Retrieves the type of a column.
+     *
+     * @param column
+     *            Position of the column, starting at 0.
+     * @return Type according to java.sql.Types.
+     */
+    int getColumnType(int column);
+
+    /**
+     * Retrieves the quantity of rows.
+     *
+     * @return Quantity of rows.
+     */
+    int getRowCount();
+
+    /**
+     * Retrieves a value.
+     *
+     * @param row
+     *            Position of the row, starting at 0.
+     * @param column
+     *            Position of the column, starting at 0.
+     * @return The value of the cell.
+     */
+    String getValue(int row, int column);
+}
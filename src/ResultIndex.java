@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Index to find a text in the cells of a result.
+ * <p>
+ * The character columns are indexed by trigrams (sequences of three
+ * characters, without case), in batches of rows processed by the indexer
+ * thread, thus the index is built in background. The dictionary encoded
+ * columns are not indexed: the text is searched in the dictionary, and then
+ * the codes of the rows are compared. The other columns, and the rows that are
+ * not indexed yet, are scanned in parallel, one column at a time.
+ * <p>
+ * When the result is refreshed, the index of the previous result is reused:
+ * the rows that did not change are moved to their new position, and only the
+ * new and modified rows are indexed.
+ * <p>
+ * The index is built once the whole result was fetched, not while the rows
+ * arrive: the fetch fills the buffer in the connection thread, and the
+ * result is presented and indexed when it is complete.
+ * <p>
+ * All the methods, except {@link #cancel()} and {@link #getData()}, have to
+ * be called from the indexer thread.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class ResultIndex {
+
+    /**
+     * Growable list of ints.
+     */
+    private static final class IntList {
+        /**
+         * Quantity of values.
+         */
+        int size;
+        /**
+         * Values.
+         */
+        int[] values = new int[4];
+
+        /**
+         * Adds a row, if it is not already the last one.
+         *
+         * @param row
+         *            Row to add.
+         * @return False if the row is lower than the last one, thus the list
+         *         has to be sorted.
+         */
+        boolean addRow(final int row) {
+            if (this.size > 0 && this.values[this.size - 1] == row) {
+                return true;
+            }
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = row;
+            return this.size == 1 || this.values[this.size - 2] < row;
+        }
+    }
+
+    /**
+     * Quantity of rows indexed in each batch.
+     */
+    private static final int BATCH_ROWS = 20000;
+    /**
+     * Maximal quantity of matches returned by a search.
+     */
+    static final int MAX_MATCHES = 100000;
+    /**
+     * Quantity of rows scanned by each parallel task.
+     */
+    private static final int SCAN_ROWS = 50000;
+
+    /**
+     * Checks if a value contains a text, without case.
+     *
+     * @param value
+     *            Value of a cell.
+     * @param text
+     *            Text to find, in lower case.
+     * @return True if the text is in the value.
+     */
+    static boolean contains(final String value, final String text) {
+        if (value == null) {
+            return false;
+        }
+        final int last = value.length() - text.length();
+        for (int i = 0; i <= last; i++) {
+            if (value.regionMatches(true, i, text, 0, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Intersects two ascending lists of rows.
+     *
+     * @param first
+     *            Rows.
+     * @param firstSize
+     *            Quantity of rows of the first list.
+     * @param second
+     *            Rows.
+     * @return Rows that are in both lists.
+     */
+    private static IntList intersect(final int[] first, final int firstSize,
+            final IntList second) {
+        final IntList ret = new IntList();
+        int i = 0;
+        int j = 0;
+        while (i < firstSize && j < second.size) {
+            if (first[i] < second.values[j]) {
+                i++;
+            } else if (first[i] > second.values[j]) {
+                j++;
+            } else {
+                ret.addRow(first[i]);
+                i++;
+                j++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Builds the key of a trigram.
+     *
+     * @param text
+     *            Text that contains the trigram.
+     * @param start
+     *            Position of the trigram.
+     * @return The key, with the three characters in lower case.
+     */
+    private static long trigram(final CharSequence text, final int start) {
+        return ((long) Character.toLowerCase(text.charAt(start)) << 32)
+                | ((long) Character.toLowerCase(text.charAt(start + 1)) << 16)
+                | Character.toLowerCase(text.charAt(start + 2));
+    }
+
+    /**
+     * Indicates that the index is not used anymore.
+     */
+    private volatile boolean cancelled;
+    /**
+     * Result being indexed.
+     */
+    private final ResultData data;
+    /**
+     * Thread that builds the index and executes the searches.
+     */
+    private final ExecutorService indexer;
+    /**
+     * Index of the previous result, reused by the first batch; null if there
+     * is not.
+     */
+    private ResultIndex origin;
+    /**
+     * New position of each row of the previous result, or -1 if the row was
+     * deleted or modified.
+     */
+    private int[] originRows;
+    /**
+     * Rows that are not indexed yet.
+     */
+    private final BitSet pending;
+    /**
+     * Rows of each trigram, for each indexed column; null for the columns
+     * that are scanned.
+     */
+    private final ArrayList<HashMap<Long, IntList>> postings;
+    /**
+     * Threads that scan the columns in parallel.
+     */
+    private final ExecutorService scanners;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param result
+     *            Result to index.
+     * @param indexerThread
+     *            Thread that builds the index and executes the searches.
+     * @param scannerThreads
+     *            Threads that scan the columns in parallel.
+     */
+    ResultIndex(final ResultData result, final ExecutorService indexerThread,
+            final ExecutorService scannerThreads) {
+        this.data = result;
+        this.indexer = indexerThread;
+        this.scanners = scannerThreads;
+        this.pending = new BitSet(result.getRowCount());
+        this.pending.set(0, result.getRowCount());
+        this.postings = new ArrayList<HashMap<Long, IntList>>();
+        for (int i = 0; i < result.getColumnCount(); i++) {
+            if (this.isDictionaryEncoded(i)) {
+                this.postings.add(null);
+                continue;
+            }
+            switch (result.getColumnType(i)) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                this.postings.add(new HashMap<Long, IntList>());
+                break;
+            default:
+                this.postings.add(null);
+            }
+        }
+    }
+
+    /**
+     * Creates an index that reuses the index of the previous result of the
+     * same query. The previous index has to be cancelled.
+     *
+     * @param result
+     *            Result to index.
+     * @param previous
+     *            Index of the previous result.
+     * @param rowMapping
+     *            New position of each row of the previous result, ascending,
+     *            or -1 if the row was deleted or modified.
+     * @param indexerThread
+     *            Thread that builds the index and executes the searches.
+     * @param scannerThreads
+     *            Threads that scan the columns in parallel.
+     */
+    ResultIndex(final ResultData result, final ResultIndex previous,
+            final int[] rowMapping, final ExecutorService indexerThread,
+            final ExecutorService scannerThreads) {
+        this(result, indexerThread, scannerThreads);
+        this.origin = previous;
+        this.originRows = rowMapping;
+    }
+
+    /**
+     * Stops building the index.
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Retrieves the rows of an indexed column that have all the trigrams of
+     * the text. They have to be verified, because the trigrams can be in a
+     * different order.
+     *
+     * @param column
+     *            Position of the column.
+     * @param text
+     *            Text to find, in lower case, of at least three characters.
+     * @return Candidate rows, ascending.
+     */
+    private IntList candidates(final int column, final String text) {
+        final HashMap<Long, IntList> trigrams = this.postings.get(column);
+        IntList ret = null;
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            final IntList rows = trigrams.get(Long.valueOf(trigram(text, i)));
+            if (rows == null) {
+                return new IntList();
+            }
+            if (ret == null) {
+                ret = new IntList();
+                ret.values = Arrays.copyOf(rows.values, rows.size);
+                ret.size = rows.size;
+            } else {
+                ret = intersect(ret.values, ret.size, rows);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Finds the cells that contain the given text, without case.
+     *
+     * @param text
+     *            Text to find.
+     * @return Position of the matching cells, as row << 32 | column, sorted
+     *         by row and column. At most {@link #MAX_MATCHES} cells are
+     *         returned.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting the scans.
+     */
+    long[] find(final String text) throws InterruptedException {
+        final String lower = text.toLowerCase(Locale.ROOT);
+        final int columnQty = this.data.getColumnCount();
+        final int rowQty = this.data.getRowCount();
+        final BitSet unindexed = (BitSet) this.pending.clone();
+
+        // Codes of the dictionary values that contain the text.
+        final boolean[][] codes = new boolean[columnQty][];
+        for (int i = 0; i < columnQty; i++) {
+            if (this.isDictionaryEncoded(i)) {
+                final ResultBuffer buffer = (ResultBuffer) this.data;
+                codes[i] = new boolean[buffer.getDictionarySize(i)];
+                for (int j = 0; j < codes[i].length; j++) {
+                    codes[i][j] = contains(buffer.getDictionaryValue(i, j),
+                            lower);
+                }
+            }
+        }
+
+        final ArrayList<Future<long[]>> scans = new ArrayList<Future<long[]>>();
+        for (int start = 0; start < rowQty; start += SCAN_ROWS) {
+            final int from = start;
+            final int to = Math.min(rowQty, start + SCAN_ROWS);
+            scans.add(this.scanners.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    return ResultIndex.this.scan(lower, codes, unindexed,
+                            from, to);
+                }
+            }));
+        }
+
+        long[] matches = new long[64];
+        int size = 0;
+        for (int i = 0; i < columnQty; i++) {
+            if (this.postings.get(i) != null && lower.length() >= 3) {
+                final IntList rows = this.candidates(i, lower);
+                for (int j = 0; j < rows.size && size < MAX_MATCHES; j++) {
+                    final int row = rows.values[j];
+                    if (contains(this.data.getValue(row, i), lower)) {
+                        if (size == matches.length) {
+                            matches = Arrays.copyOf(matches, size * 2);
+                        }
+                        matches[size++] = ((long) row << 32) | i;
+                    }
+                }
+            }
+        }
+        for (final Future<long[]> scan : scans) {
+            final long[] found;
+            try {
+                found = scan.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            final int count = Math.min(found.length, MAX_MATCHES - size);
+            if (size + count > matches.length) {
+                matches = Arrays.copyOf(matches, Math.max(size + count,
+                        matches.length * 2));
+            }
+            System.arraycopy(found, 0, matches, size, count);
+            size += count;
+        }
+        final long[] ret = Arrays.copyOf(matches, size);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Retrieves the result of this index.
+     *
+     * @return Rows being indexed.
+     */
+    ResultData getData() {
+        return this.data;
+    }
+
+    /**
+     * Indexes the trigrams of the pending rows of a batch.
+     *
+     * @param from
+     *            First row of the batch.
+     * @param to
+     *            Row after the last one of the batch.
+     */
+    private void indexRows(final int from, final int to) {
+        final HashSet<IntList> unsorted = new HashSet<IntList>();
+        for (int i = 0; i < this.postings.size(); i++) {
+            final HashMap<Long, IntList> trigrams = this.postings.get(i);
+            if (trigrams == null) {
+                continue;
+            }
+            for (int row = this.pending.nextSetBit(from); row >= 0
+                    && row < to; row = this.pending.nextSetBit(row + 1)) {
+                final String value = this.data.getValue(row, i);
+                if (value == null) {
+                    continue;
+                }
+                for (int j = 0; j + 3 <= value.length(); j++) {
+                    final Long key = Long.valueOf(trigram(value, j));
+                    IntList rows = trigrams.get(key);
+                    if (rows == null) {
+                        rows = new IntList();
+                        trigrams.put(key, rows);
+                    }
+                    if (!rows.addRow(row)) {
+                        // A new row between the reused ones.
+                        unsorted.add(rows);
+                    }
+                }
+            }
+        }
+        for (final IntList rows : unsorted) {
+            Arrays.sort(rows.values, 0, rows.size);
+        }
+        this.pending.clear(from, to);
+    }
+
+    /**
+     * Checks if the index is complete.
+     *
+     * @return True if all the rows are indexed.
+     */
+    boolean isComplete() {
+        return this.pending.isEmpty();
+    }
+
+    /**
+     * Checks if a column is dictionary encoded.
+     *
+     * @param column
+     *            Position of the column.
+     * @return True if the codes of the column can be compared.
+     */
+    private boolean isDictionaryEncoded(final int column) {
+        return this.data instanceof ResultBuffer
+                && ((ResultBuffer) this.data).isDictionaryEncoded(column);
+    }
+
+    /**
+     * Moves the indexed rows of the previous result to their new position.
+     * Nothing is reused if the indexed columns are different.
+     */
+    private void reuseOrigin() {
+        final ResultIndex previous = this.origin;
+        final int[] mapping = this.originRows;
+        this.origin = null;
+        this.originRows = null;
+        if (this.postings.size() != previous.postings.size()) {
+            return;
+        }
+        for (int i = 0; i < this.postings.size(); i++) {
+            if ((this.postings.get(i) == null)
+                    != (previous.postings.get(i) == null)) {
+                return;
+            }
+        }
+        for (int i = 0; i < this.postings.size(); i++) {
+            final HashMap<Long, IntList> trigrams = this.postings.get(i);
+            if (trigrams == null) {
+                continue;
+            }
+            for (final Map.Entry<Long, IntList> entry : previous.postings
+                    .get(i).entrySet()) {
+                final IntList old = entry.getValue();
+                final IntList rows = new IntList();
+                for (int j = 0; j < old.size; j++) {
+                    final int row = mapping[old.values[j]];
+                    if (row != -1) {
+                        rows.addRow(row);
+                    }
+                }
+                if (rows.size > 0) {
+                    trigrams.put(entry.getKey(), rows);
+                }
+            }
+        }
+        for (int i = 0; i < mapping.length; i++) {
+            if (mapping[i] != -1 && !previous.pending.get(i)) {
+                this.pending.clear(mapping[i]);
+            }
+        }
+    }
+
+    /**
+     * Scans a range of rows, in the columns that are not indexed, and in the
+     * indexed columns for the rows that are not indexed yet. The columns are
+     * scanned one after the other, thus the snapshots decompress each chunk
+     * once. Called from the scanner threads.
+     *
+     * @param text
+     *            Text to find, in lower case.
+     * @param codes
+     *            Matching codes of the dictionary encoded columns.
+     * @param unindexed
+     *            Rows that are not indexed.
+     * @param from
+     *            First row of the range.
+     * @param to
+     *            Row after the last one of the range.
+     * @return Position of the matching cells.
+     */
+    private long[] scan(final String text, final boolean[][] codes,
+            final BitSet unindexed, final int from, final int to) {
+        final int columnQty = this.data.getColumnCount();
+        long[] matches = new long[16];
+        int size = 0;
+        for (int i = 0; i < columnQty && size < MAX_MATCHES; i++) {
+            // The indexed rows are found with the trigrams.
+            final boolean indexed = codes[i] == null
+                    && this.postings.get(i) != null && text.length() >= 3;
+            int row = indexed ? unindexed.nextSetBit(from) : from;
+            while (row >= 0 && row < to && size < MAX_MATCHES) {
+                final boolean found;
+                if (codes[i] != null) {
+                    found = codes[i][((ResultBuffer) this.data).getCode(row,
+                            i)];
+                } else {
+                    found = contains(this.data.getValue(row, i), text);
+                }
+                if (found) {
+                    if (size == matches.length) {
+                        matches = Arrays.copyOf(matches, size * 2);
+                    }
+                    matches[size++] = ((long) row << 32) | i;
+                }
+                row = indexed ? unindexed.nextSetBit(row + 1) : row + 1;
+            }
+        }
+        return Arrays.copyOf(matches, size);
+    }
+
+    /**
+     * Starts building the index in background. Each batch of rows is a
+     * different task of the indexer thread, thus the searches are executed
+     * between the batches. The first batch reuses the previous index, if
+     * there is one.
+     *
+     * @param done
+     *            Executed in the indexer thread when all the rows are
+     *            indexed, unless the index is cancelled before.
+     */
+    void start(final Runnable done) {
+        this.indexer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (ResultIndex.this.cancelled) {
+                    return;
+                }
+                if (ResultIndex.this.origin != null) {
+                    ResultIndex.this.reuseOrigin();
+                }
+                final int from = ResultIndex.this.pending.nextSetBit(0);
+                if (from != -1) {
+                    ResultIndex.this.indexRows(from, Math.min(
+                            ResultIndex.this.data.getRowCount(),
+                            from + BATCH_ROWS));
+                }
+                if (ResultIndex.this.isComplete()) {
+                    done.run();
+                } else {
+                    ResultIndex.this.indexer.execute(this);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Result saved in a file, that can be presented without a connection to the
+ * database.
+ * <p>
+ * The file is columnar: after a header with the names and types of the
+ * columns, and the dictionaries of the dictionary encoded columns, the values
+ * of each column are stored in compressed chunks of {@link #CHUNK_ROWS} rows.
+ * An index in the header gives the position of each chunk. When a snapshot is
+ * opened, the file is memory mapped and only the header is read; the chunks
+ * are decompressed when their rows are presented, and only the last used
+ * chunks are kept in the heap.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class ResultSnapshot implements ResultData {
+    /**
+     * Quantity of decompressed chunks kept in memory.
+     */
+    private static final int CACHED_CHUNKS = 64;
+    /**
+     * Quantity of rows of each chunk.
+     */
+    static final int CHUNK_ROWS = 4096;
+    /**
+     * Extension of the snapshot files.
+     */
+    static final String EXTENSION = "db2snap";
+    /**
+     * Identifier of the snapshot files: DB2VSNAP.
+     */
+    private static final long MAGIC = 0x44423256534E4150L;
+    /**
+     * Encoding of the strings.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * Version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Opens a snapshot. The file is mapped in memory, and only its header is
+     * read.
+     *
+     * @param file
+     *            File written by {@link #write(ResultData, File)}.
+     * @return The snapshot.
+     * @throws IOException
+     *             If the file cannot be read or it is not a snapshot.
+     */
+    static ResultSnapshot open(final File file) throws IOException {
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = in.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot is too big to be mapped: "
+                        + file);
+            }
+            return new ResultSnapshot(channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in
+     *            Source of the string.
+     * @return The string, or null.
+     * @throws IOException
+     *             If the string cannot be read.
+     */
+    private static String readString(final DataInputStream in)
+            throws IOException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Reads a string from the header of a mapped snapshot.
+     *
+     * @param in
+     *            Mapped file, positioned at the string.
+     * @return The string, or null.
+     * @throws IOException
+     *             If the length of the string is not valid.
+     */
+    private static String readString(final ByteBuffer in) throws IOException {
+        final int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string in the snapshot.");
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Writes a result in a snapshot file. The dictionary encoded columns of
+     * the fetched results are written as codes. The snapshot is written in a
+     * temporary file of the same directory, that then replaces the
+     * destination; thus the destination can be the snapshot being saved.
+     * Windows does not replace a file that is memory mapped, thus there the
+     * snapshot being presented cannot be overwritten.
+     *
+     * @param data
+     *            Result to save.
+     * @param file
+     *            Destination, it is overwritten.
+     * @throws IOException
+     *             If the file cannot be written.
+     */
+    static void write(final ResultData data, final File file)
+            throws IOException {
+        final int columnQty = data.getColumnCount();
+        final int rowQty = data.getRowCount();
+        final int chunkQty = (rowQty + CHUNK_ROWS - 1) / CHUNK_ROWS;
+
+        final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        final DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeLong(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(columnQty);
+        header.writeInt(rowQty);
+        header.writeInt(CHUNK_ROWS);
+        final boolean[] encoded = new boolean[columnQty];
+        for (int i = 0; i < columnQty; i++) {
+            writeString(header, data.getColumnName(i));
+            header.writeInt(data.getColumnType(i));
+            encoded[i] = data instanceof ResultBuffer
+                    && ((ResultBuffer) data).isDictionaryEncoded(i);
+            header.writeBoolean(encoded[i]);
+            if (encoded[i]) {
+                final ResultBuffer buffer = (ResultBuffer) data;
+                final int size = buffer.getDictionarySize(i);
+                header.writeInt(size);
+                for (int j = 0; j < size; j++) {
+                    writeString(header, buffer.getDictionaryValue(i, j));
+                }
+            }
+        }
+        // Each entry of the index: position, compressed and raw length.
+        final long dataStart = header.size() + 16L * columnQty * chunkQty;
+
+        final File temp = File.createTempFile(file.getName(), ".tmp",
+                file.getAbsoluteFile().getParentFile());
+        boolean written = false;
+        final RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            final FileChannel channel = out.getChannel();
+            channel.position(dataStart);
+            long position = dataStart;
+            final ByteArrayOutputStream rawBytes = new ByteArrayOutputStream();
+            final DataOutputStream raw = new DataOutputStream(rawBytes);
+            final ByteArrayOutputStream compressed =
+                    new ByteArrayOutputStream();
+            final byte[] block = new byte[64 * 1024];
+            for (int i = 0; i < columnQty; i++) {
+                for (int chunk = 0; chunk < chunkQty; chunk++) {
+                    rawBytes.reset();
+                    final int last = Math.min(rowQty, (chunk + 1) * CHUNK_ROWS);
+                    for (int row = chunk * CHUNK_ROWS; row < last; row++) {
+                        if (encoded[i]) {
+                            raw.writeInt(((ResultBuffer) data).getCode(row, i));
+                        } else {
+                            writeString(raw, data.getValue(row, i));
+                        }
+                    }
+                    raw.flush();
+
+                    compressed.reset();
+                    deflater.reset();
+                    deflater.setInput(rawBytes.toByteArray());
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        compressed.write(block, 0, deflater.deflate(block));
+                    }
+                    channel.write(ByteBuffer.wrap(compressed.toByteArray()));
+
+                    header.writeLong(position);
+                    header.writeInt(compressed.size());
+                    header.writeInt(rawBytes.size());
+                    position += compressed.size();
+                }
+            }
+            header.flush();
+            channel.write(ByteBuffer.wrap(headerBytes.toByteArray()), 0);
+            out.close();
+            if (!temp.renameTo(file)) {
+                // Some systems do not replace an existing file.
+                if (!file.delete() || !temp.renameTo(file)) {
+                    throw new IOException("The file " + file
+                            + " cannot be replaced; it can be in use, like "
+                            + "the presented snapshot in Windows");
+                }
+            }
+            written = true;
+        } finally {
+            deflater.end();
+            out.close();
+            if (!written) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes a string as its length and its UTF-8 bytes.
+     *
+     * @param out
+     *            Destination.
+     * @param value
+     *            String to write, can be null.
+     * @throws IOException
+     *             If the string cannot be written.
+     */
+    private static void writeString(final DataOutputStream out,
+            final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Last used chunks, decompressed.
+     */
+    private final Map<Long, Object> cache;
+    /**
+     * Quantity of chunks of each column.
+     */
+    private final int chunkQty;
+    /**
+     * Rows of each chunk.
+     */
+    private final int chunkRows;
+    /**
+     * Dictionaries of the encoded columns, null for the other columns.
+     */
+    private final String[][] dictionaries;
+    /**
+     * Compressed length of each chunk.
+     */
+    private final int[] lengths;
+    /**
+     * Content of the file.
+     */
+    private final ByteBuffer map;
+    /**
+     * Names of the columns.
+     */
+    private final String[] names;
+    /**
+     * Position of each chunk in the file.
+     */
+    private final long[] offsets;
+    /**
+     * Decompressed length of each chunk.
+     */
+    private final int[] rawLengths;
+    /**
+     * Quantity of rows.
+     */
+    private final int rowQty;
+    /**
+     * Types of the columns.
+     */
+    private final int[] types;
+
+    /**
+     * Reads the header of a mapped snapshot. All the values of the header are
+     * checked, thus a truncated or foreign file is reported as an
+     * IOException.
+     *
+     * @param content
+     *            Content of the file.
+     * @throws IOException
+     *             If the file is not a valid snapshot.
+     */
+    private ResultSnapshot(final ByteBuffer content) throws IOException {
+        this.map = content;
+        final ByteBuffer in = content.duplicate();
+        if (in.remaining() < 24 || in.getLong() != MAGIC) {
+            throw new IOException("The file is not a result snapshot.");
+        }
+        final int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        final int columnQty = in.getInt();
+        this.rowQty = in.getInt();
+        this.chunkRows = in.getInt();
+        // Each column has at least its name, type and encoding.
+        if (columnQty < 0 || columnQty > in.remaining() / 9
+                || this.rowQty < 0 || this.chunkRows <= 0) {
+            throw new IOException("Invalid snapshot header.");
+        }
+        this.chunkQty = (int) (((long) this.rowQty + this.chunkRows - 1)
+                / this.chunkRows);
+        this.names = new String[columnQty];
+        this.types = new int[columnQty];
+        this.dictionaries = new String[columnQty][];
+        try {
+            for (int i = 0; i < columnQty; i++) {
+                this.names[i] = readString(in);
+                this.types[i] = in.getInt();
+                if (in.get() != 0) {
+                    final int size = in.getInt();
+                    if (size < 0 || size > in.remaining() / 4) {
+                        throw new IOException("Invalid snapshot dictionary.");
+                    }
+                    this.dictionaries[i] = new String[size];
+                    for (int j = 0; j < size; j++) {
+                        this.dictionaries[i][j] = readString(in);
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The snapshot is truncated.");
+        }
+        // Each entry of the index has 16 bytes.
+        if ((long) columnQty * this.chunkQty > in.remaining() / 16) {
+            throw new IOException("The snapshot is truncated.");
+        }
+        final int entries = columnQty * this.chunkQty;
+        this.offsets = new long[entries];
+        this.lengths = new int[entries];
+        this.rawLengths = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            this.offsets[i] = in.getLong();
+            this.lengths[i] = in.getInt();
+            this.rawLengths[i] = in.getInt();
+            if (this.offsets[i] < 0 || this.lengths[i] < 0
+                    || this.rawLengths[i] < 0
+                    || this.offsets[i] + this.lengths[i] > content.limit()) {
+                throw new IOException("Invalid chunk in the snapshot.");
+            }
+        }
+        this.cache = new LinkedHashMap<Long, Object>(CACHED_CHUNKS, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Long, Object> eldest) {
+                return this.size() > CACHED_CHUNKS;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the values of a chunk, decompressing it if it is not in the
+     * cache.
+     *
+     * @param column
+     *            Position of the column.
+     * @param chunk
+     *            Position of the chunk in the column.
+     * @return The codes of a dictionary encoded column (int[]), or the values
+     *         of the other columns (String[]).
+     */
+    private Object getChunk(final int column, final int chunk) {
+        final int entry = column * this.chunkQty + chunk;
+        final Long key = Long.valueOf(entry);
+        Object values = this.cache.get(key);
+        if (values != null) {
+            return values;
+        }
+
+        final byte[] compressed = new byte[this.lengths[entry]];
+        final ByteBuffer in = this.map.duplicate();
+        in.position((int) this.offsets[entry]);
+        in.get(compressed);
+        final byte[] raw = new byte[this.rawLengths[entry]];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < raw.length) {
+                final int bytes = inflater.inflate(raw, read, raw.length
+                        - read);
+                if (bytes == 0 && (inflater.finished()
+                        || inflater.needsInput())) {
+                    throw new DataFormatException("Truncated chunk");
+                }
+                read += bytes;
+            }
+
+            final int rows = Math.min(this.chunkRows, this.rowQty - chunk
+                    * this.chunkRows);
+            final DataInputStream data = new DataInputStream(
+                    new ByteArrayInputStream(raw));
+            if (this.dictionaries[column] != null) {
+                final int[] codes = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    codes[i] = data.readInt();
+                }
+                values = codes;
+            } else {
+                final String[] strings = new String[rows];
+                for (int i = 0; i < rows; i++) {
+                    strings[i] = readString(data);
+                }
+                values = strings;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted snapshot chunk "
+                    + entry, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted snapshot chunk "
+                    + entry, e);
+        } finally {
+            inflater.end();
+        }
+        this.cache.put(key, values);
+        return values;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getColumnCount()
+     */
+    @Override
+    public int getColumnCount() {
+        return this.names.length;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getColumnName(int)
+     */
+    @Override
+    public String getColumnName(final int column) {
+        return this.names[column];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getColumnType(int)
+     */
+    @Override
+    public int getColumnType(final int column) {
+        return this.types[column];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getRowCount()
+     */
+    @Override
+    public int getRowCount() {
+        return this.rowQty;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ResultData#getValue(int, int)
+     */
+    @Override
+    public synchronized String getValue(final int row, final int column) {
+        final Object values = this.getChunk(column, row / this.chunkRows);
+        final int position = row % this.chunkRows;
+        if (this.dictionaries[column] != null) {
+            return this.dictionaries[column][((int[]) values)[position]];
+        }
+        return ((String[]) values)[position];
+    }
+}
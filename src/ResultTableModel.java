@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2012 Andres Gomez Casanova
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Model of the table that presents the result of a query. The values are read
+ * directly from the result buffer or snapshot, without copying them.
+ *
+ * @author Andres Gomez Casanova
+ * @version 2012-08-27
+ */
+public class ResultTableModel extends AbstractTableModel {
+
+    /**
+     * Generated ID.
+     */
+    private static final long serialVersionUID = -3307946711530419871L;
+
+    /**
+     * Rows of the result.
+     */
+    private ResultData data;
+    /**
+     * Position in the current result of each row of {@link #mappingSource},
+     * or -1 if the row was deleted or modified; null if they are the same.
+     */
+    private int[] mapping;
+    /**
+     * Previous result whose rows are mapped to the current one, or null if
+     * the rows cannot be mapped or nobody takes the mapping.
+     */
+    private ResultData mappingSource;
+    /**
+     * Quantity of rows notified to the table while a refresh is notifying its
+     * changes, or -1.
+     */
+    private int shownRows = -1;
+
+    /**
+     * Creates a model for the given result.
+     *
+     * @param result
+     *            Rows of the result.
+     */
+    ResultTableModel(final ResultData result) {
+        this.data = result;
+    }
+
+    /**
+     * Retrieves the rows presented by this model.
+     *
+     * @return Rows of the result.
+     */
+    ResultData getData() {
+        return this.data;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.swing.table.TableModel#getColumnCount()
+     */
+    @Override
+    public int getColumnCount() {
+        return this.data.getColumnCount();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.swing.table.AbstractTableModel#getColumnName(int)
+     */
+    @Override
+    public String getColumnName(final int column) {
+        return this.data.getColumnName(column);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.swing.table.TableModel#getRowCount()
+     */
+    @Override
+    public int getRowCount() {
+        if (this.shownRows != -1) {
+            return this.shownRows;
+        }
+        return this.data.getRowCount();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.swing.table.TableModel#getValueAt(int, int)
+     */
+    @Override
+    public Object getValueAt(final int rowIndex, final int columnIndex) {
+        return this.data.getValue(rowIndex, columnIndex);
+    }
+
+    /**
+     * Updates the rows presented by this model with a new execution of the
+     * same query. The rows are matched by their key, and only the rows that
+     * were deleted, inserted or modified are notified to the table; this way
+     * the table keeps its scroll position, selection and column widths, and
+     * only repaints the changed rows. The presented buffer is not modified,
+     * it is replaced by the new one once the changes are known. If the
+     * columns are different or the rows changed their order, all the rows are
+     * replaced. This method has to be called from the event dispatch thread.
+     *
+     * @param fresh
+     *            Rows of the new execution.
+     */
+    void refresh(final ResultBuffer fresh) {
+        if (!(this.data instanceof ResultBuffer)
+                || !ResultBuffer.sameColumns(this.data, fresh)
+                || this.data.getRowCount() == 0) {
+            this.setData(fresh);
+            return;
+        }
+        final ResultBuffer old = (ResultBuffer) this.data;
+        final int oldCount = old.getRowCount();
+        final int freshCount = fresh.getRowCount();
+        final HashMap<String, Integer> freshRows =
+                new HashMap<String, Integer>();
+        for (int i = 0; i < freshCount; i++) {
+            if (freshRows.put(fresh.getKey(i), Integer.valueOf(i)) != null) {
+                // Duplicated keys, the rows cannot be matched.
+                this.setData(fresh);
+                return;
+            }
+        }
+        old.setKeyColumns(fresh.getKeyColumns());
+
+        // Matches the rows; source[i] is the old row of the fresh row i.
+        final int[] source = new int[freshCount];
+        Arrays.fill(source, -1);
+        final boolean[] deleted = new boolean[oldCount];
+        int previous = -1;
+        for (int i = 0; i < oldCount; i++) {
+            final Integer match = freshRows.get(old.getKey(i));
+            if (match == null || source[match.intValue()] != -1) {
+                deleted[i] = true;
+            } else if (match.intValue() < previous) {
+                // The rows changed their order.
+                this.setData(fresh);
+                return;
+            } else {
+                previous = match.intValue();
+                source[previous] = i;
+            }
+        }
+
+        final int[] rows = new int[oldCount];
+        Arrays.fill(rows, -1);
+        final boolean[] modified = new boolean[freshCount];
+        for (int i = 0; i < freshCount; i++) {
+            if (source[i] != -1) {
+                modified[i] = !old.rowEquals(source[i], fresh, i);
+                if (!modified[i]) {
+                    rows[source[i]] = i;
+                }
+            }
+        }
+        // Keeps the position of the rows for the index of the find bar.
+        if (this.mappingSource != null && this.mapping == null) {
+            this.mapping = rows;
+        } else if (this.mappingSource != null) {
+            for (int i = 0; i < this.mapping.length; i++) {
+                if (this.mapping[i] != -1) {
+                    this.mapping[i] = rows[this.mapping[i]];
+                }
+            }
+        }
+
+        this.data = fresh;
+        this.shownRows = oldCount;
+        int last = -1;
+        for (int i = oldCount - 1; i >= -1; i--) {
+            if (i >= 0 && deleted[i]) {
+                if (last == -1) {
+                    last = i;
+                }
+            } else if (last != -1) {
+                this.shownRows -= last - i;
+                this.fireTableRowsDeleted(i + 1, last);
+                last = -1;
+            }
+        }
+        int first = -1;
+        for (int i = 0; i <= freshCount; i++) {
+            if (i < freshCount && source[i] == -1) {
+                if (first == -1) {
+                    first = i;
+                }
+            } else if (first != -1) {
+                this.shownRows += i - first;
+                this.fireTableRowsInserted(first, i - 1);
+                first = -1;
+            }
+        }
+        this.shownRows = -1;
+        for (int i = 0; i <= freshCount; i++) {
+            if (i < freshCount && modified[i]) {
+                if (first == -1) {
+                    first = i;
+                }
+            } else if (first != -1) {
+                this.fireTableRowsUpdated(first, i - 1);
+                first = -1;
+            }
+        }
+    }
+
+    /**
+     * Replaces the rows presented by this model. If the new result has the
+     * same columns, the table keeps its column widths and order. This method
+     * has to be called from the event dispatch thread.
+     *
+     * @param result
+     *            New rows.
+     */
+    void setData(final ResultData result) {
+        final boolean sameColumns = ResultBuffer.sameColumns(this.data,
+                result);
+        this.data = result;
+        this.mapping = null;
+        this.mappingSource = null;
+        if (sameColumns) {
+            this.fireTableDataChanged();
+        } else {
+            this.fireTableStructureChanged();
+        }
+    }
+
+    /**
+     * Retrieves the position in the current result of the rows of a previous
+     * result, when the current one comes from refreshes of it. Then the
+     * following refreshes are mapped from the current result; the refreshes
+     * are only mapped after the first call, and until the rows are replaced
+     * with {@link #setData(ResultData)}. This method has to be called from
+     * the event dispatch thread.
+     *
+     * @param previous
+     *            Previous result.
+     * @return Position of each row of the previous result, ascending, or -1
+     *         if the row was deleted or modified; null if the rows cannot be
+     *         mapped.
+     */
+    int[] takeRowMapping(final ResultData previous) {
+        final int[] ret;
+        if (previous == this.mappingSource && previous != this.data) {
+            ret = this.mapping;
+        } else {
+            ret = null;
+        }
+        this.mapping = null;
+        this.mappingSource = this.data;
+        return ret;
+    }
+}